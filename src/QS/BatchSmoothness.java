@@ -0,0 +1,222 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+/**
+ * Tests candidates for smoothness in batches instead of one at a time, following Bernstein's
+ * "How to find smooth parts of integers". Candidates are collected until there are {@code batchSize}
+ * of them, then the product P of every prime in the factor base is reduced mod each candidate u
+ * with a remainder tree over the product tree of the candidates. u is smooth exactly when
+ * {@code (P mod u)^(2^e) mod u = 0} for 2^e at least the number of bits of u, since every prime
+ * dividing u then divides it at most 2^e times.
+ *
+ * <p>Only the candidates found to be smooth are factored, by descending the product tree of the factor
+ * base and following only the subtrees sharing a factor with the candidate. If partial relations are kept,
+ * candidates smooth except for a single large prime are also factored and added as partial relations.
+ * Candidates can be added from any number of threads, and a full batch is tested on the thread that
+ * filled it.</p>
+ */
+public class BatchSmoothness {
+
+    private final QuadraticSieve qs;
+    private final int batchSize;
+
+    // Product tree of the factor base, where primeTree[0] are the primes and the last level is their product
+    private final BigInteger[][] primeTree;
+
+    // Index of each prime of the factor base in the array of all primes < F
+    private final int[] ltf_index;
+
+    // Candidates u = g(x) and their t = h(x) collected for the next batch, only accessed while synchronized
+    private ArrayList<BigInteger> values, roots;
+
+    /**
+     * Creates a batch smoothness test adding the smooth candidates it finds to the relations of {@code qs}.
+     * @param qs sieve whose factor base is tested against and which smooth relations are added to
+     * @param batchSize number of candidates tested at once
+     */
+    public BatchSmoothness(QuadraticSieve qs, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.qs = qs;
+        this.batchSize = batchSize;
+        primeTree = productTree(qs.FactorBase);
+        ltf_index = qs.ltf_index;
+
+        values = new ArrayList<>(batchSize);
+        roots = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Adds a candidate to the current batch, testing the batch if it is now full.
+     * @param u value of g(x) for candidate
+     * @param t value of h(x) for candidate
+     */
+    public void add(BigInteger u, BigInteger t) {
+        if (u.signum() == 0) return;
+
+        ArrayList<BigInteger> u_batch = null, t_batch = null;
+        synchronized (this) {
+            values.add(u);
+            roots.add(t);
+            if (values.size() >= batchSize) {
+                u_batch = values;
+                t_batch = roots;
+                values = new ArrayList<>(batchSize);
+                roots = new ArrayList<>(batchSize);
+            }
+        }
+
+        // Test outside of lock, so that other threads can keep adding to the next batch
+        if (u_batch != null) test(u_batch, t_batch);
+    }
+
+    /**
+     * Tests every candidate in the current batch, even if the batch is not full.
+     */
+    public void flush() {
+        ArrayList<BigInteger> u_batch, t_batch;
+        synchronized (this) {
+            u_batch = values;
+            t_batch = roots;
+            values = new ArrayList<>(batchSize);
+            roots = new ArrayList<>(batchSize);
+        }
+        if (!u_batch.isEmpty()) test(u_batch, t_batch);
+    }
+
+    /**
+     * Tests each candidate in the batch, adding the smooth ones to the relations.
+     * @param u_batch values of g(x) for each candidate
+     * @param t_batch values of h(x) for each candidate
+     */
+    private void test(ArrayList<BigInteger> u_batch, ArrayList<BigInteger> t_batch) {
+        BigInteger[] u = new BigInteger[u_batch.size()];
+        for (int i = 0; i < u.length; i++) u[i] = u_batch.get(i).abs();
+
+        BigInteger[] rem = remainderTree(primeTree[primeTree.length - 1][0], productTree(u));
+
+        BigInteger y, smooth, cofactor;
+        Relation relation;
+        long maxCofactor = qs.maxCofactor();
+        for (int i = 0; i < u.length; i++) {
+            y = rem[i];
+            for (int b = 1; (b < u[i].bitLength()) && (y.signum() != 0); b <<= 1) {
+                y = y.multiply(y).mod(u[i]);
+            }
+
+            // P^(2^e) is 0 mod u if and only if every prime dividing u is in the factor base
+            if (y.signum() == 0) {
+                relation = factor(u[i], t_batch.get(i), u_batch.get(i).signum() < 0);
+                if (relation != null) qs.addRelation(relation);
+            } else if (maxCofactor > 1) {
+                // Otherwise gcd(u, P^(2^e)) is the smooth part of u, and what is left may be a large prime
+                smooth = u[i].gcd(y);
+                cofactor = u[i].divide(smooth);
+                if ((cofactor.bitLength() < Long.SIZE) && (cofactor.longValue() <= maxCofactor)) {
+                    relation = factor(smooth, t_batch.get(i), u_batch.get(i).signum() < 0);
+                    if (relation != null) qs.addRelation(relation, cofactor.longValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Factors {@code u}, which must be smooth over the factor base, by only descending into the subtrees
+     * of the product tree of the factor base whose product shares a factor with {@code u}.
+     * @param u smooth value to be factored, the absolute value of g(x)
+     * @param t h(x), whose square is equivalent to g(x) mod N
+     * @param negative true if g(x) is negative
+     * @return relation of g(x) and h(x), or null if {@code u} was not smooth
+     */
+    public Relation factor(BigInteger u, BigInteger t, boolean negative) {
+        // Each prime divided out removes at least a bit
+        Found found = new Found(u.bitLength());
+        int top = primeTree.length - 1;
+        u = descend(u, u.gcd(primeTree[top][0]), top, 0, found);
+        return u.equals(BigInteger.ONE) ? Relation.of(found.primes, found.n, t, negative) : null;
+    }
+
+    /**
+     * Indices of the primes < F divided out of a value, in the order they were divided out and repeated for
+     * each time they divide it. The subtrees of the product tree are descended from left to right, so this is
+     * in ascending order.
+     */
+    private static final class Found {
+        final int[] primes;
+        int n = 0;
+
+        Found(int size) {
+            primes = new int[size];
+        }
+    }
+
+    /**
+     * Divides out of {@code u} every prime under node {@code i} of level {@code level} of the product tree of
+     * the factor base that divides {@code g}, the gcd of {@code u} and the product of the node.
+     * @return {@code u} with those primes divided out
+     */
+    private BigInteger descend(BigInteger u, BigInteger g, int level, int i, Found found) {
+        if (g.equals(BigInteger.ONE)) return u;
+
+        if (level == 0) {
+            BigInteger[] div;
+            while ((div = u.divideAndRemainder(primeTree[0][i]))[1].signum() == 0) {
+                u = div[0];
+                found.primes[found.n++] = ltf_index[i];
+            }
+            return u;
+        }
+
+        // Nodes without a sibling are carried up unchanged, so the right child may not exist
+        BigInteger[] children = primeTree[level - 1];
+        u = descend(u, g.gcd(children[2 * i]), level - 1, 2 * i, found);
+        if (2 * i + 1 < children.length) {
+            u = descend(u, g.gcd(children[2 * i + 1]), level - 1, 2 * i + 1, found);
+        }
+        return u;
+    }
+
+    /**
+     * Computes the product tree of {@code leaves}, where each level is the products of pairs of nodes of
+     * the level below it, and a node without a pair is carried up unchanged.
+     * @param leaves values whose product is computed
+     * @return every level of the tree, starting with {@code leaves} and ending with their product
+     */
+    public static BigInteger[][] productTree(BigInteger[] leaves) {
+        ArrayList<BigInteger[]> levels = new ArrayList<>();
+        BigInteger[] level = leaves;
+        levels.add(level);
+        while (level.length > 1) {
+            BigInteger[] next = new BigInteger[(level.length + 1) >>> 1];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = (2 * i + 1 < level.length) ? level[2 * i].multiply(level[2 * i + 1]) : level[2 * i];
+            }
+            level = next;
+            levels.add(level);
+        }
+        return levels.toArray(new BigInteger[0][]);
+    }
+
+    /**
+     * Computes {@code n mod u} for each leaf u of {@code tree}, reducing down from the root so that
+     * each reduction is by a number about the size of the one being reduced.
+     * @param n value to be reduced
+     * @param tree product tree of values to reduce by
+     * @return {@code n mod u} for each leaf u
+     */
+    public static BigInteger[] remainderTree(BigInteger n, BigInteger[][] tree) {
+        BigInteger[] rem = new BigInteger[]{n.mod(tree[tree.length - 1][0])};
+        for (int level = tree.length - 2; level >= 0; level--) {
+            BigInteger[] nodes = tree[level];
+            BigInteger[] next = new BigInteger[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                next[i] = rem[i >>> 1].mod(nodes[i]);
+            }
+            rem = next;
+        }
+        return rem;
+    }
+}
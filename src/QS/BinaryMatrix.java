@@ -0,0 +1,237 @@
+package QS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dense matrix over GF(2), with each row packed 64 entries to a long so that adding one row to another
+ * is an XOR of {@code nCols / 64} words.
+ *
+ * <p>The left kernel is found by Gaussian elimination using the Method of Four Russians. Columns are
+ * eliminated a word at a time: up to 64 pivot rows are found for the columns of the word and reduced
+ * against each other, then every 8 pivots are combined into a table of all 256 of their sums. Each row
+ * below the pivots is then cleared on all of the pivot columns with one table lookup and XOR per 8 pivots,
+ * instead of one XOR per pivot. Rows below the pivots are independent of each other, so they are split
+ * between threads.</p>
+ */
+public final class BinaryMatrix {
+
+    // Number of pivots combined in each table
+    private static final int TABLE_BITS = 8;
+
+    private final long[][] rows;
+    private final int nRows;
+    private final int nCols;
+    private final int words;
+
+    /**
+     * Creates a new matrix, initially 0, with {@code nRows} rows and {@code nCols} columns.
+     * @param nRows number of rows
+     * @param nCols number of columns
+     */
+    public BinaryMatrix(int nRows, int nCols) {
+        if (nRows < 0 || nCols < 0) {
+            throw new IllegalArgumentException("Dimensions must be non-negative: " + nRows + " x " + nCols);
+        }
+        this.nRows = nRows;
+        this.nCols = nCols;
+        words = (nCols + 63) >>> 6;
+        rows = new long[nRows][words];
+    }
+
+    /**
+     * Creates the matrix whose row i is 1 exactly on the columns {@code indices[i]}.
+     * @param indices columns of each row that are 1
+     * @param nCols number of columns
+     * @return matrix with a row for each array of {@code indices}
+     */
+    public static BinaryMatrix fromIndices(int[][] indices, int nCols) {
+        BinaryMatrix m = new BinaryMatrix(indices.length, nCols);
+        for (int i = 0; i < indices.length; i++) {
+            for (int j : indices[i]) m.set(i, j);
+        }
+        return m;
+    }
+
+    public int nRows() {
+        return nRows;
+    }
+
+    public int nCols() {
+        return nCols;
+    }
+
+    public boolean get(int i, int j) {
+        return ((rows[i][j >>> 6] >>> j) & 1) != 0;
+    }
+
+    public void set(int i, int j) {
+        rows[i][j >>> 6] |= 1L << j;
+    }
+
+    /**
+     * Adds row {@code src} to row {@code dst}.
+     */
+    public void xorRow(int dst, int src) {
+        xor(rows[dst], rows[src], 0);
+    }
+
+    /**
+     * Computes a basis of the left kernel of this matrix, every vector v with {@code vM = 0}. This matrix is
+     * augmented with the identity on its right, and eliminated on its own columns until every row below the
+     * rank is 0 there, where the identity part of each such row is then a combination of rows summing to 0.
+     * @param nThreads number of threads to eliminate with
+     * @return matrix with {@code nRows()} columns, whose rows are a basis of the left kernel
+     */
+    public BinaryMatrix leftKernel(int nThreads) {
+        // Identity starts on a word boundary, so that kernel vectors are copied out a word at a time
+        int ext = words + ((nRows + 63) >>> 6);
+        long[][] T = new long[nRows][];
+        for (int i = 0; i < nRows; i++) {
+            T[i] = Arrays.copyOf(rows[i], ext);
+            T[i][words + (i >>> 6)] |= 1L << i;
+        }
+
+        int rank = eliminate(T, nCols, Math.max(1, nThreads));
+
+        BinaryMatrix kernel = new BinaryMatrix(nRows - rank, nRows);
+        for (int i = rank; i < nRows; i++) {
+            System.arraycopy(T[i], words, kernel.rows[i - rank], 0, kernel.words);
+        }
+        return kernel;
+    }
+
+    /**
+     * Puts the first {@code cols} columns of {@code T} in row echelon form.
+     * @return rank of the first {@code cols} columns, where every row from the rank on is 0 on them
+     */
+    private static int eliminate(long[][] T, int cols, int nThreads) {
+        ExecutorService pool = (nThreads > 1) ? Executors.newFixedThreadPool(nThreads) : null;
+        int n = T.length;
+        int pivotRow = 0;
+
+        int[] pivotCols = new int[64];
+        long[][][] tables = new long[64 / TABLE_BITS][1 << TABLE_BITS][];
+        try {
+            for (int w = 0; (w << 6) < cols && pivotRow < n; w++) {
+                int first = pivotRow;
+                int found = 0;
+
+                for (int b = 0; b < 64 && (w << 6) + b < cols && pivotRow < n; b++) {
+                    /*
+                    Rows are only reduced by this word's pivots as they are searched, reducing by each pivot in
+                    the order found, since each pivot is already 0 on the pivot columns found before it
+                     */
+                    int i;
+                    for (i = pivotRow; i < n; i++) {
+                        for (int k = 0; k < found; k++) {
+                            if (((T[i][w] >>> pivotCols[k]) & 1) != 0) xor(T[i], T[first + k], w);
+                        }
+                        if (((T[i][w] >>> b) & 1) != 0) break;
+                    }
+                    if (i == n) continue;
+
+                    long[] temp = T[i];
+                    T[i] = T[pivotRow];
+                    T[pivotRow] = temp;
+                    pivotCols[found++] = b;
+                    pivotRow++;
+                }
+                if (found == 0) continue;
+
+                // Reduce pivots against each other, so that each is 1 on its own pivot column and 0 on the rest
+                for (int q = found - 1; q > 0; q--) {
+                    for (int p = 0; p < q; p++) {
+                        if (((T[first + p][w] >>> pivotCols[q]) & 1) != 0) xor(T[first + p], T[first + q], w);
+                    }
+                }
+
+                int nTables = (found + TABLE_BITS - 1) / TABLE_BITS;
+                for (int t = 0; t < nTables; t++) {
+                    fillTable(tables[t], T, first + t * TABLE_BITS, Math.min(TABLE_BITS, found - t * TABLE_BITS), w);
+                }
+
+                int lo = pivotRow, nFound = found, word = w;
+                if (pool == null || n - lo < 2 * nThreads) {
+                    reduce(T, lo, n, w, pivotCols, nFound, tables);
+                } else {
+                    ArrayList<Callable<Void>> tasks = new ArrayList<>(nThreads);
+                    int step = (n - lo + nThreads - 1) / nThreads;
+                    for (int s = lo; s < n; s += step) {
+                        int start = s, end = Math.min(n, s + step);
+                        tasks.add(() -> {
+                            reduce(T, start, end, word, pivotCols, nFound, tables);
+                            return null;
+                        });
+                    }
+                    for (Future<Void> f : pool.invokeAll(tasks)) f.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during elimination", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Elimination failed", e.getCause());
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+        return pivotRow;
+    }
+
+    /**
+     * Fills {@code table} with the sum of every subset of the {@code size} pivot rows starting at row
+     * {@code start}, where entry {@code s} is the sum of the pivots whose bits are set in {@code s}.
+     * Only words from {@code w} on are filled, since every pivot is 0 before them.
+     */
+    private static void fillTable(long[][] table, long[][] T, int start, int size, int w) {
+        int len = T[start].length;
+        for (int s = 0; s < (1 << size); s++) {
+            if (table[s] == null) table[s] = new long[len];
+        }
+        for (int s = 1; s < (1 << size); s++) {
+            // Each subset is the subset without its lowest pivot, plus that pivot
+            long[] prev = table[s & (s - 1)];
+            long[] pivot = T[start + Integer.numberOfTrailingZeros(s)];
+            long[] entry = table[s];
+            for (int k = w; k < len; k++) entry[k] = prev[k] ^ pivot[k];
+        }
+    }
+
+    /**
+     * Clears every pivot column of word {@code w} in rows {@code lo} to {@code hi}, adding to each row the
+     * table entry of the pivots that are set in it.
+     */
+    private static void reduce(long[][] T, int lo, int hi, int w, int[] pivotCols, int found, long[][][] tables) {
+        int nTables = (found + TABLE_BITS - 1) / TABLE_BITS;
+        int[] index = new int[nTables];
+        for (int i = lo; i < hi; i++) {
+            long word = T[i][w];
+            if (word == 0) continue;
+
+            // Read every index before adding any entry, since entries change the bits of the word
+            for (int t = 0; t < nTables; t++) {
+                int s = 0;
+                int end = Math.min(found, (t + 1) * TABLE_BITS);
+                for (int k = t * TABLE_BITS; k < end; k++) {
+                    s |= (int) ((word >>> pivotCols[k]) & 1) << (k - t * TABLE_BITS);
+                }
+                index[t] = s;
+            }
+            for (int t = 0; t < nTables; t++) {
+                if (index[t] != 0) xor(T[i], tables[t][index[t]], w);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code src} to {@code dst}, skipping the words before {@code from}.
+     */
+    private static void xor(long[] dst, long[] src, int from) {
+        for (int k = from; k < dst.length; k++) dst[k] ^= src[k];
+    }
+}
@@ -0,0 +1,445 @@
+package QS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds dependencies between the columns of a sparse matrix B over GF(2) with Montgomery's Block Lanczos
+ * algorithm, iterating on blocks of 64 vectors at once. B is never made dense: the symmetric matrix
+ * {@code A = B^T B} is only ever applied to a block as {@code B^T (B v)}, so each iteration costs two
+ * passes over the non-zero entries of B plus a few passes over blocks of {@code nCols} longs.
+ *
+ * <p>Starting from a random block Y, the iteration solves {@code AX = AY}, so that {@code X - Y} is in the
+ * kernel of A. The last block V of the iteration is also nearly in the kernel, and combining the columns of
+ * {@code X - Y} and V whose products with B sum to 0 gives up to 64 dependencies of B. Products by B are
+ * split by columns between threads, each thread summing into its own block of rows.</p>
+ *
+ * <p>Block 64 x 64 matrices are {@code long[64]}, whose bit j of entry i is the entry in row i and column j.</p>
+ */
+public class BlockLanczos {
+
+    // Number of random starting blocks tried before giving up
+    private static final int ATTEMPTS = 4;
+
+    private final RelationMatrix B;
+    private final int nThreads;
+    private final Random random;
+
+    // Block of rows each thread sums its columns of Bx into
+    private final long[][] partial;
+
+    private int iterations;
+
+    /**
+     * Creates a solver for dependencies between the columns of {@code B}.
+     * @param B matrix whose columns are relations
+     * @param nThreads number of threads to multiply by B with
+     * @param random source of random starting blocks
+     */
+    public BlockLanczos(RelationMatrix B, int nThreads, Random random) {
+        this.B = B;
+        this.nThreads = Math.max(1, nThreads);
+        this.random = random;
+        partial = new long[this.nThreads][B.nRows()];
+    }
+
+    /**
+     * Returns the number of iterations of the last attempt.
+     * @return number of blocks computed
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Finds up to 64 dependencies between the columns of B, retrying with a new starting block if an
+     * iteration breaks down.
+     * @return block of {@code nCols} entries, where bit k of entry j is set if column j is in dependency k,
+     * or null if no dependencies were found
+     */
+    public long[] solve() {
+        ExecutorService pool = (nThreads > 1) ? Executors.newFixedThreadPool(nThreads) : null;
+        try {
+            long[] deps;
+            for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                if ((deps = iterate(pool)) != null) return deps;
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs one Block Lanczos iteration from a random starting block.
+     * @return dependencies found, or null if the iteration broke down or found none
+     */
+    private long[] iterate(ExecutorService pool) throws InterruptedException {
+        int n = B.nCols();
+        long[] y = new long[n];
+        for (int i = 0; i < n; i++) y[i] = random.nextLong();
+
+        // v[0] is the current block, v[1] and v[2] the two before it
+        long[][] v = new long[3][n];
+        long[] v0 = new long[n];
+        long[] vnext = new long[n];
+        long[] x = new long[n];
+        multiplyA(pool, y, v[0]);
+        System.arraycopy(v[0], 0, v0, 0, n);
+
+        long[][] winv = new long[3][64];
+        long[][] vt_a_v = new long[2][64];
+        long[][] vt_a2_v = new long[2][64];
+        int[][] s = new int[2][64];
+        for (int i = 0; i < 64; i++) s[1][i] = i;
+        int dim0, dim1 = 64;
+        long mask0, mask1 = -1L;
+        long[] d, e, f, f2 = new long[64];
+
+        int maxIterations = n / 60 + 100;
+        for (iterations = 0; ; iterations++) {
+            if (iterations > maxIterations) return null;
+
+            multiplyA(pool, v[0], vnext);
+            vt_a_v[0] = transposeMultiply(v[0], vnext);
+            vt_a2_v[0] = transposeMultiply(vnext, vnext);
+
+            // Iteration is done once the current block is A-orthogonal to itself
+            if (isZero(vt_a_v[0])) break;
+
+            dim0 = nonsingularSubmatrix(vt_a_v[0], s[0], s[1], dim1, winv[0]);
+            if (dim0 <= 0) return null;
+
+            mask0 = 0;
+            for (int i = 0; i < dim0; i++) mask0 |= 1L << s[0][i];
+
+            // D = I - Winv_i (V_i^T A^2 V_i S_i S_i^T + V_i^T A V_i)
+            d = new long[64];
+            for (int i = 0; i < 64; i++) d[i] = (vt_a2_v[0][i] & mask0) ^ vt_a_v[0][i];
+            d = multiply(winv[0], d);
+            for (int i = 0; i < 64; i++) d[i] ^= 1L << i;
+
+            // E = -Winv_{i-1} V_i^T A V_i S_i S_i^T
+            e = multiply(winv[1], vt_a_v[0]);
+            for (int i = 0; i < 64; i++) e[i] &= mask0;
+
+            // F = -Winv_{i-2} (I - V_{i-1}^T A V_{i-1} Winv_{i-1}) (V_{i-1}^T A^2 V_{i-1} S_{i-1} S_{i-1}^T
+            //     + V_{i-1}^T A V_{i-1}) S_i S_i^T
+            f = multiply(vt_a_v[1], winv[1]);
+            for (int i = 0; i < 64; i++) f[i] ^= 1L << i;
+            f = multiply(winv[2], f);
+            for (int i = 0; i < 64; i++) f2[i] = ((vt_a2_v[1][i] & mask1) ^ vt_a_v[1][i]) & mask0;
+            f = multiply(f, f2);
+
+            // V_{i+1} = A V_i S_i S_i^T + V_i D + V_{i-1} E + V_{i-2} F
+            for (int i = 0; i < n; i++) vnext[i] &= mask0;
+            multiplyAdd(v[0], d, vnext);
+            multiplyAdd(v[1], e, vnext);
+            multiplyAdd(v[2], f, vnext);
+
+            // X += V_i Winv_i V_i^T V_0
+            d = multiply(winv[0], transposeMultiply(v[0], v0));
+            multiplyAdd(v[0], d, x);
+
+            long[] temp = v[2];
+            v[2] = v[1];
+            v[1] = v[0];
+            v[0] = vnext;
+            vnext = temp;
+            winv[2] = winv[1];
+            winv[1] = winv[0];
+            winv[0] = new long[64];
+            vt_a_v[1] = vt_a_v[0];
+            vt_a2_v[1] = vt_a2_v[0];
+            System.arraycopy(s[0], 0, s[1], 0, 64);
+            mask1 = mask0;
+            dim1 = dim0;
+        }
+
+        // AX = AY, so X - Y is in the kernel of A
+        for (int i = 0; i < n; i++) x[i] ^= y[i];
+        return combine(pool, x, v[0]);
+    }
+
+    /**
+     * Finds the combinations of the columns of {@code x} and {@code v}, both nearly in the kernel of B,
+     * that are in the kernel of B.
+     * @return block of dependencies, or null if there were none
+     */
+    private long[] combine(ExecutorService pool, long[] x, long[] v) throws InterruptedException {
+        int m = B.nRows(), n = B.nCols();
+        long[] bx = new long[m], bv = new long[m];
+        multiplyB(pool, x, bx);
+        multiplyB(pool, v, bv);
+
+        // Rows of the m x 128 matrix [Bx | Bv], reduced until the combinations summing to 0 can be read off
+        long[][] M = new long[m][];
+        for (int i = 0; i < m; i++) M[i] = new long[]{bx[i], bv[i]};
+
+        int[] pivotOf = new int[128];
+        int pivotRow = 0;
+        for (int c = 0; c < 128; c++) {
+            int w = c >>> 6;
+            long bit = 1L << c;
+            pivotOf[c] = -1;
+
+            int r;
+            for (r = pivotRow; r < m; r++) {
+                if ((M[r][w] & bit) != 0) break;
+            }
+            if (r == m) continue;
+
+            long[] temp = M[r];
+            M[r] = M[pivotRow];
+            M[pivotRow] = temp;
+            for (int i = 0; i < m; i++) {
+                if ((i != pivotRow) && ((M[i][w] & bit) != 0)) {
+                    M[i][0] ^= M[pivotRow][0];
+                    M[i][1] ^= M[pivotRow][1];
+                }
+            }
+            pivotOf[c] = pivotRow++;
+        }
+
+        // Each free column plus the pivot columns its value is carried to sums to 0
+        long[] deps = new long[n];
+        int k = 0;
+        for (int c = 0; c < 128 && k < 64; c++) {
+            if (pivotOf[c] >= 0) continue;
+
+            long[] z = new long[2];
+            z[c >>> 6] |= 1L << c;
+            for (int p = 0; p < 128; p++) {
+                if ((pivotOf[p] >= 0) && ((M[pivotOf[p]][c >>> 6] & (1L << c)) != 0)) z[p >>> 6] |= 1L << p;
+            }
+
+            long bit = 1L << k;
+            boolean nonzero = false;
+            for (int i = 0; i < n; i++) {
+                if ((Long.bitCount(x[i] & z[0]) + Long.bitCount(v[i] & z[1]) & 1) != 0) {
+                    deps[i] |= bit;
+                    nonzero = true;
+                }
+            }
+            if (nonzero) k++;
+        }
+        return (k > 0) ? deps : null;
+    }
+
+    /**
+     * Finds a set of columns S of {@code t} such that the submatrix of {@code t} on S is invertible, preferring
+     * the columns not in the last such set so that every column is used at least every other iteration.
+     * @param t block V^T A V
+     * @param s set to the columns chosen, the first of them being the chosen columns
+     * @param last_s columns chosen in the last iteration
+     * @param last_dim number of columns chosen in the last iteration
+     * @param w set to the inverse of the submatrix on the chosen columns, 0 elsewhere
+     * @return number of columns chosen, or -1 if they cannot be chosen
+     */
+    private static int nonsingularSubmatrix(long[] t, int[] s, int[] last_s, int last_dim, long[] w) {
+        // M = [t | I]
+        long[][] M = new long[64][2];
+        for (int i = 0; i < 64; i++) {
+            M[i][0] = t[i];
+            M[i][1] = 1L << i;
+        }
+
+        // Columns not chosen last time go first
+        long mask = 0;
+        for (int i = 0; i < last_dim; i++) {
+            mask |= 1L << last_s[i];
+            s[63 - i] = last_s[i];
+        }
+        for (int i = 0, j = 0; i < 64; i++) {
+            if ((mask & (1L << i)) == 0) s[j++] = i;
+        }
+
+        int dim = 0;
+        for (int i = 0; i < 64; i++) {
+            mask = 1L << s[i];
+            long[] row_i = M[s[i]];
+
+            int j;
+            for (j = i; j < 64; j++) {
+                if ((M[s[j]][0] & mask) != 0) {
+                    swap(row_i, M[s[j]]);
+                    break;
+                }
+            }
+
+            if (j < 64) {
+                for (j = 0; j < 64; j++) {
+                    long[] row_j = M[s[j]];
+                    if ((row_j != row_i) && ((row_j[0] & mask) != 0)) {
+                        row_j[0] ^= row_i[0];
+                        row_j[1] ^= row_i[1];
+                    }
+                }
+                s[dim++] = s[i];
+                continue;
+            }
+
+            // Without a pivot in t, the column is left out, using the identity half to pivot instead
+            for (j = i; j < 64; j++) {
+                if ((M[s[j]][1] & mask) != 0) {
+                    swap(row_i, M[s[j]]);
+                    break;
+                }
+            }
+            if (j == 64) return -1;
+
+            for (j = 0; j < 64; j++) {
+                long[] row_j = M[s[j]];
+                if ((row_j != row_i) && ((row_j[1] & mask) != 0)) {
+                    row_j[0] ^= row_i[0];
+                    row_j[1] ^= row_i[1];
+                }
+            }
+            row_i[0] = row_i[1] = 0;
+        }
+
+        for (int i = 0; i < 64; i++) w[i] = M[i][1];
+
+        // Every column has to have been chosen this time or last time, or the blocks become dependent
+        mask = 0;
+        for (int i = 0; i < dim; i++) mask |= 1L << s[i];
+        for (int i = 0; i < last_dim; i++) mask |= 1L << last_s[i];
+        return (mask == -1L) ? dim : -1;
+    }
+
+    private static void swap(long[] a, long[] b) {
+        long t0 = a[0], t1 = a[1];
+        a[0] = b[0];
+        a[1] = b[1];
+        b[0] = t0;
+        b[1] = t1;
+    }
+
+    /**
+     * Sets {@code z} to {@code A x = B^T (B x)}.
+     */
+    private void multiplyA(ExecutorService pool, long[] x, long[] z) throws InterruptedException {
+        long[] y = new long[B.nRows()];
+        multiplyB(pool, x, y);
+        parallel(pool, B.nCols(), (t, lo, hi) -> B.multiplyTranspose(y, z, lo, hi));
+    }
+
+    /**
+     * Sets {@code y} to {@code B x}, with each thread summing its columns into its own block before they are
+     * summed together.
+     */
+    private void multiplyB(ExecutorService pool, long[] x, long[] y) throws InterruptedException {
+        parallel(pool, B.nCols(), (t, lo, hi) -> {
+            Arrays.fill(partial[t], 0);
+            B.multiply(x, partial[t], lo, hi);
+        });
+        parallel(pool, B.nRows(), (t, lo, hi) -> {
+            for (long[] p : partial) {
+                for (int i = lo; i < hi; i++) y[i] ^= p[i];
+            }
+        });
+    }
+
+    private interface RangeTask {
+        void run(int thread, int lo, int hi);
+    }
+
+    /**
+     * Runs {@code task} on {@code nThreads} equal ranges of {@code 0} to {@code n}, or all of them on the
+     * current thread if there is no pool.
+     */
+    private void parallel(ExecutorService pool, int n, RangeTask task) throws InterruptedException {
+        if (pool == null) {
+            task.run(0, 0, n);
+            return;
+        }
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<>(nThreads);
+        int step = (n + nThreads - 1) / nThreads;
+        for (int t = 0; t < nThreads; t++) {
+            int thread = t, lo = Math.min(n, t * step), hi = Math.min(n, (t + 1) * step);
+            tasks.add(() -> {
+                task.run(thread, lo, hi);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Matrix multiplication failed", e.getCause());
+        }
+    }
+
+    private static boolean isZero(long[] a) {
+        for (long word : a) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the product {@code ab} of two 64 x 64 blocks.
+     */
+    static long[] multiply(long[] a, long[] b) {
+        long[] c = new long[64];
+        for (int i = 0; i < 64; i++) {
+            long sum = 0;
+            for (long ai = a[i]; ai != 0; ai &= ai - 1) sum ^= b[Long.numberOfTrailingZeros(ai)];
+            c[i] = sum;
+        }
+        return c;
+    }
+
+    /**
+     * Adds the product of the n x 64 block {@code v} and the 64 x 64 block {@code b} to {@code y}, looking up
+     * each byte of each entry of {@code v} in a table of every sum of 8 rows of {@code b}.
+     */
+    static void multiplyAdd(long[] v, long[] b, long[] y) {
+        long[][] table = new long[8][256];
+        for (int k = 0; k < 8; k++) {
+            for (int s = 1; s < 256; s++) {
+                table[k][s] = table[k][s & (s - 1)] ^ b[8 * k + Integer.numberOfTrailingZeros(s)];
+            }
+        }
+
+        for (int i = 0; i < v.length; i++) {
+            long vi = v[i];
+            if (vi == 0) continue;
+            long sum = 0;
+            for (int k = 0; k < 8; k++) sum ^= table[k][(int) (vi >>> (8 * k)) & 0xff];
+            y[i] ^= sum;
+        }
+    }
+
+    /**
+     * Returns the 64 x 64 product {@code x^T y} of two n x 64 blocks, summing each entry of {@code y} into
+     * a table by each byte of the same entry of {@code x}, then summing the table into the rows it belongs to.
+     */
+    static long[] transposeMultiply(long[] x, long[] y) {
+        long[][] table = new long[8][256];
+        for (int i = 0; i < x.length; i++) {
+            long xi = x[i];
+            if (xi == 0) continue;
+            for (int k = 0; k < 8; k++) table[k][(int) (xi >>> (8 * k)) & 0xff] ^= y[i];
+        }
+
+        long[] c = new long[64];
+        for (int k = 0; k < 8; k++) {
+            for (int s = 1; s < 256; s++) {
+                for (int b = 0; b < 8; b++) {
+                    if ((s & (1 << b)) != 0) c[8 * k + b] ^= table[k][s];
+                }
+            }
+        }
+        return c;
+    }
+}
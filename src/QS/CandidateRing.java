@@ -0,0 +1,218 @@
+package QS;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of sieve candidates, where each candidate is stored as 3 ints: the id of the
+ * polynomial it was found with, its x value, and its value in the sieve array. Any number of threads
+ * can add or remove candidates, blocking while the ring is full or empty respectively, until the
+ * ring is closed.
+ *
+ * <p>Counts of how many candidates have passed through the ring, how often threads had to wait on
+ * it, and how deep it has gotten are kept for measuring how well each side of the ring keeps up.</p>
+ */
+public class CandidateRing {
+
+    private final int[] poly_ids;
+    private final int[] x_values;
+    private final int[] log_values;
+    private final int capacity;
+
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+
+    // Index of first candidate and number of candidates, only accessed while holding lock
+    private int head, size;
+    private boolean closed;
+
+    // Metrics, also only accessed while holding lock
+    private long puts, takes;
+    private long fullWaits, emptyWaits;
+    private int maxSize;
+
+    public CandidateRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        poly_ids = new int[capacity];
+        x_values = new int[capacity];
+        log_values = new int[capacity];
+
+        lock = new ReentrantLock();
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+
+        head = size = 0;
+        closed = false;
+        puts = takes = fullWaits = emptyWaits = 0;
+        maxSize = 0;
+    }
+
+    /**
+     * Adds the first {@code n} candidates in {@code x} and {@code log}, all found with the same polynomial,
+     * waiting for space in the ring whenever it is full.
+     * @param poly_id id of polynomial the candidates were found with
+     * @param x x values of candidates
+     * @param log sieve array values of candidates
+     * @param n number of candidates to add
+     * @return true if all candidates were added, false if the ring was closed first
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    public boolean put(int poly_id, int[] x, int[] log, int n) throws InterruptedException {
+        lock.lock();
+        try {
+            int i = 0;
+            while (i < n) {
+                while ((size == capacity) && !closed) {
+                    fullWaits++;
+                    notFull.await();
+                }
+
+                if (closed) return false;
+
+                int tail;
+                for (; (i < n) && (size < capacity); i++) {
+                    tail = (head + size) % capacity;
+                    poly_ids[tail] = poly_id;
+                    x_values[tail] = x[i];
+                    log_values[tail] = log[i];
+                    size++;
+                    puts++;
+                }
+
+                if (size > maxSize) maxSize = size;
+                notEmpty.signalAll();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes up to {@code poly_id.length} candidates from the ring, waiting for a candidate to
+     * be added if the ring is empty.
+     * @param poly_id array filled with the polynomial ids of candidates removed
+     * @param x array filled with the x values of candidates removed
+     * @param log array filled with the sieve array values of candidates removed
+     * @return number of candidates removed, which is only 0 if the ring is closed and empty
+     * @throws InterruptedException if interrupted while waiting for a candidate
+     */
+    public int take(int[] poly_id, int[] x, int[] log) throws InterruptedException {
+        lock.lock();
+        try {
+            while ((size == 0) && !closed) {
+                emptyWaits++;
+                notEmpty.await();
+            }
+
+            int n = Math.min(size, poly_id.length);
+            for (int i = 0; i < n; i++) {
+                poly_id[i] = poly_ids[head];
+                x[i] = x_values[head];
+                log[i] = log_values[head];
+                head = (head + 1) % capacity;
+            }
+            size -= n;
+            takes += n;
+
+            if (n > 0) notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the ring, so that candidates can no longer be added and every thread waiting on the ring
+     * returns. Candidates still in the ring can be removed.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxSize() {
+        lock.lock();
+        try {
+            return maxSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getPuts() {
+        lock.lock();
+        try {
+            return puts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTakes() {
+        lock.lock();
+        try {
+            return takes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times a thread adding candidates had to wait because the ring was full.
+     * @return number of waits on a full ring
+     */
+    public long getFullWaits() {
+        lock.lock();
+        try {
+            return fullWaits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times a thread removing candidates had to wait because the ring was empty.
+     * @return number of waits on an empty ring
+     */
+    public long getEmptyWaits() {
+        lock.lock();
+        try {
+            return emptyWaits;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
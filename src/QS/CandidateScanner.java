@@ -0,0 +1,72 @@
+package QS;
+
+import java.util.Arrays;
+
+/**
+ * Scans a range of the sieve array for candidates, the indices whose value (read as an unsigned byte)
+ * is at least the sieve threshold. Only a tiny fraction of the sieve array passes, so a scanner should
+ * spend as little time as possible on the stretches with no candidates.
+ *
+ * <p>{@link #getInstance()} returns a scanner using the Vector API if the {@code jdk.incubator.vector}
+ * module was added when running, and a scalar scanner otherwise.</p>
+ */
+public interface CandidateScanner {
+
+    /**
+     * Returns the indices {@code lo <= j < hi} of {@code array} whose value is at least {@code min_val}.
+     * @param array sieve array
+     * @param min_val minimum value in sieve array for an index to be a candidate
+     * @param lo first index of sieve array to be checked
+     * @param hi index after last index of sieve array to be checked
+     * @return indices of candidates, in ascending order
+     */
+    int[] scan(byte[] array, int min_val, int lo, int hi);
+
+    /**
+     * Returns the fastest scanner available, only loading the vector scanner if the Vector API can be used.
+     * @return vector scanner if available, otherwise scalar scanner
+     */
+    static CandidateScanner getInstance() {
+        return Holder.instance;
+    }
+
+    /**
+     * Chooses the scanner the first time one is needed.
+     */
+    final class Holder {
+
+        private static final CandidateScanner instance = choose();
+
+        private Holder() {}
+
+        private static CandidateScanner choose() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                try {
+                    return new VectorScanner();
+                } catch (LinkageError e) {
+                    // Module was found but the scanner could not be loaded, so fall back to scalar scan
+                }
+            }
+            return new ScalarScanner();
+        }
+    }
+
+    /**
+     * Scanner checking one index at a time.
+     */
+    final class ScalarScanner implements CandidateScanner {
+
+        @Override
+        public int[] scan(byte[] array, int min_val, int lo, int hi) {
+            int[] candidates = new int[16];
+            int n = 0;
+            for (int j = lo; j < hi; j++) {
+                if ((array[j] & 0xff) >= min_val) {
+                    if (n == candidates.length) candidates = Arrays.copyOf(candidates, n << 1);
+                    candidates[n++] = j;
+                }
+            }
+            return Arrays.copyOf(candidates, n);
+        }
+    }
+}
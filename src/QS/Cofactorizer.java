@@ -0,0 +1,415 @@
+package QS;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits cofactors left over from trial division, of up to 62 bits, using only {@code long} arithmetic.
+ * Primality is tested with a Miller-Rabin test that is deterministic for every 64-bit integer, and composites
+ * are split with Lehman's method if small enough, otherwise SQUFOF, falling back to Pollard-Brent rho if
+ * SQUFOF fails. Modular multiplication for Miller-Rabin and rho is done in Montgomery form, so that no
+ * 128-bit division is ever needed.
+ *
+ * <p>The number of times each method was tried, how often it succeeded, and how long it took in total are
+ * counted, for tuning which method is used for which sizes. A single instance can be used from any number
+ * of threads.</p>
+ */
+public class Cofactorizer {
+
+    /**
+     * Method of splitting a cofactor, used to index the counters of each.
+     */
+    public enum Method { PRIME_TEST, LEHMAN, SQUFOF, RHO }
+
+    // Largest cofactor split with Lehman's method, above this 4kn could overflow
+    public static long lehmanBound = 1L << 42;
+
+    // Largest cofactor that can be split, since Montgomery multiplication needs n < 2^63 and SQUFOF needs kn < 2^63
+    public static final long maxCofactor = (1L << 62) - 1;
+
+    // Bases for which Miller-Rabin has no pseudoprimes less than 2^64, from Jim Sinclair
+    private static final long[] bases = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+
+    // Multipliers tried by SQUFOF, products of small odd primes
+    private static final int[] multipliers = {1, 3, 5, 7, 11, 3 * 5, 3 * 7, 3 * 11, 5 * 7, 5 * 11, 7 * 11,
+            3 * 5 * 7, 3 * 5 * 11, 3 * 7 * 11, 5 * 7 * 11, 3 * 5 * 7 * 11};
+
+    // Bit i is set if i is a square mod 64, so that most non-squares are rejected without a square root
+    private static final long squaresMod64;
+
+    static {
+        long squares = 0;
+        for (int i = 0; i < 64; i++) squares |= 1L << ((i * i) & 63);
+        squaresMod64 = squares;
+    }
+
+    private final LongAdder[] calls, successes, nanos;
+
+    public Cofactorizer() {
+        int n = Method.values().length;
+        calls = new LongAdder[n];
+        successes = new LongAdder[n];
+        nanos = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            calls[i] = new LongAdder();
+            successes[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns true if {@code n} is prime, counted as a call of {@link Method#PRIME_TEST}.
+     * @param n number to test, at most {@code maxCofactor}
+     * @return true if n is prime
+     */
+    public boolean isPrime(long n) {
+        long start = System.nanoTime();
+        boolean prime = isProbablePrime(n);
+        count(Method.PRIME_TEST, prime, start);
+        return prime;
+    }
+
+    /**
+     * Finds a non-trivial factor of the composite {@code n}, trying Lehman's method if {@code n} is small
+     * enough, otherwise SQUFOF, and Pollard-Brent rho if those fail.
+     * @param n composite number to split, at most {@code maxCofactor}
+     * @return non-trivial factor of n, or 0 if none was found
+     */
+    public long split(long n) {
+        if (n > maxCofactor) {
+            throw new IllegalArgumentException(n + " is larger than " + maxCofactor);
+        } else if ((n & 1) == 0) {
+            return (n > 2) ? 2 : 0;
+        }
+
+        long start, d;
+        if (n <= lehmanBound) {
+            start = System.nanoTime();
+            d = lehman(n);
+            count(Method.LEHMAN, d > 1, start);
+            if (d > 1) return d;
+        } else {
+            start = System.nanoTime();
+            d = squfof(n);
+            count(Method.SQUFOF, d > 1, start);
+            if (d > 1) return d;
+        }
+
+        start = System.nanoTime();
+        d = brentRho(n);
+        count(Method.RHO, d > 1, start);
+        return d;
+    }
+
+    private void count(Method method, boolean success, long start) {
+        int i = method.ordinal();
+        calls[i].increment();
+        if (success) successes[i].increment();
+        nanos[i].add(System.nanoTime() - start);
+    }
+
+    public long getCalls(Method method) {
+        return calls[method.ordinal()].sum();
+    }
+
+    public long getSuccesses(Method method) {
+        return successes[method.ordinal()].sum();
+    }
+
+    /**
+     * Returns the total time spent in {@code method}, in nanoseconds.
+     * @param method method of splitting
+     * @return nanoseconds spent in method
+     */
+    public long getNanos(Method method) {
+        return nanos[method.ordinal()].sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (Method method : Method.values()) {
+            long n = getCalls(method);
+            if (n == 0) continue;
+            if (str.length() > 0) str.append(", ");
+            str.append(String.format("%s %d/%d (%.1fus avg)", method.name().toLowerCase(), getSuccesses(method), n,
+                    getNanos(method) / 1000.0 / n));
+        }
+        return str.toString();
+    }
+
+    /**
+     * Deterministic Miller-Rabin test for every n less than 2^63.
+     * @param n number to test
+     * @return true if n is prime
+     */
+    public static boolean isProbablePrime(long n) {
+        if (n < 2) return false;
+        if (n < 4) return true;
+        if ((n & 1) == 0) return false;
+
+        int s = Long.numberOfTrailingZeros(n - 1);
+        long d = (n - 1) >>> s;
+
+        Montgomery mont = new Montgomery(n);
+        long one = mont.one, minusOne = n - mont.one;
+        long x, a;
+        for (long base : bases) {
+            a = base % n;
+            if (a == 0) continue;
+
+            x = mont.pow(mont.toMontgomery(a), d);
+            if ((x == one) || (x == minusOne)) continue;
+
+            int r;
+            for (r = 1; r < s; r++) {
+                x = mont.multiply(x, x);
+                if (x == minusOne) break;
+            }
+            if (r == s) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lehman's method, which finds a factor of any n with no factor less than its cube root by searching for
+     * a and b with {@code a^2 - b^2 = 4kn} for each k up to the cube root of n. Factors less than the cube root
+     * are first found by trial division.
+     * @param n odd number to split, at most {@code lehmanBound}
+     * @return non-trivial factor of n, or 0 if n is prime
+     */
+    public static long lehman(long n) {
+        long c = cbrt(n);
+        for (long p = 3; p <= c; p += 2) {
+            if (n % p == 0) return p;
+        }
+
+        double sixthRoot = Math.pow(n, 1.0 / 6);
+        long fourKN, a, aMax, b2, b;
+        for (long k = 1; k <= c; k++) {
+            fourKN = 4 * k * n;
+            a = sqrt(fourKN);
+            if (a * a < fourKN) a++;
+            aMax = sqrt(fourKN) + (long) (sixthRoot / (4 * Math.sqrt(k))) + 1;
+            for (; a <= aMax; a++) {
+                b2 = a * a - fourKN;
+                b = sqrt(b2);
+                if (b * b == b2) {
+                    long d = gcd(a + b, n);
+                    if ((d > 1) && (d < n)) return d;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Shanks' square forms factorization, trying each multiplier k in turn for which kn does not overflow.
+     * <p>Source for algorithm: https://en.wikipedia.org/wiki/Shanks%27s_square_forms_factorization</p>
+     * @param n odd composite number to split
+     * @return non-trivial factor of n, or 0 if none was found
+     */
+    public static long squfof(long n) {
+        long s = sqrt(n);
+        if (s * s == n) return s;
+
+        long D, Po, P, Pprev, Q, Qprev, q, b, r, L, B;
+        int i;
+        for (int k : multipliers) {
+            if (n > Long.MAX_VALUE / k) break;
+
+            D = k * n;
+            Po = Pprev = P = sqrt(D);
+            Qprev = 1;
+            Q = D - Po * Po;
+            if (Q == 0) continue;
+
+            L = 2 * sqrt(2 * s);
+            B = 3 * L;
+            r = 0;
+            for (i = 2; i < B; i++) {
+                b = (Po + P) / Q;
+                P = b * Q - P;
+                q = Q;
+                Q = Qprev + b * (Pprev - P);
+                if (((i & 1) == 0) && (((squaresMod64 >>> (Q & 63)) & 1) != 0)) {
+                    r = sqrt(Q);
+                    if (r * r == Q) break;
+                }
+                Qprev = q;
+                Pprev = P;
+            }
+            if ((i >= B) || (r == 0)) continue;
+
+            b = (Po - P) / r;
+            Pprev = P = b * r + P;
+            Qprev = r;
+            Q = (D - Pprev * Pprev) / Qprev;
+            if (Q == 0) continue;
+            i = 0;
+            do {
+                b = (Po + P) / Q;
+                Pprev = P;
+                P = b * Q - P;
+                q = Q;
+                Q = Qprev + b * (Pprev - P);
+                Qprev = q;
+                i++;
+            } while ((P != Pprev) && (i < B) && (Q != 0));
+
+            r = gcd(n, Qprev);
+            if ((r != 1) && (r != n)) return r;
+        }
+        return 0;
+    }
+
+    /**
+     * Pollard's rho method with Brent's cycle finding, multiplying together many differences before each gcd.
+     * <p>Source for algorithm: Brent, "An Improved Monte Carlo Factorization Algorithm" (1980)</p>
+     * @param n odd composite number to split
+     * @return non-trivial factor of n, or 0 if none was found
+     */
+    public static long brentRho(long n) {
+        Montgomery mont = new Montgomery(n);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // Differences multiplied together before taking their gcd with n
+        final int m = 64;
+
+        for (int attempt = 0; attempt < 8; attempt++) {
+            long c = mont.toMontgomery(1 + random.nextLong(n - 1));
+            long y = mont.toMontgomery(random.nextLong(n));
+            long x = y, ys = y, q = mont.one, g = 1;
+            for (long r = 1; (g == 1) && (r < (1L << 24)); r <<= 1) {
+                x = y;
+                for (long i = 0; i < r; i++) y = mont.add(mont.multiply(y, y), c);
+
+                for (long k = 0; (k < r) && (g == 1); k += m) {
+                    ys = y;
+                    for (long i = 0; i < Math.min(m, r - k); i++) {
+                        y = mont.add(mont.multiply(y, y), c);
+                        q = mont.multiply(q, Math.abs(x - y));
+                    }
+                    g = gcd(q, n);
+                }
+            }
+
+            // Product of differences became 0 mod n, so go back and take the gcd of each difference on its own
+            if (g == n) {
+                do {
+                    ys = mont.add(mont.multiply(ys, ys), c);
+                    g = gcd(Math.abs(x - ys), n);
+                } while (g == 1);
+            }
+
+            if ((g > 1) && (g < n)) return g;
+        }
+        return 0;
+    }
+
+    /**
+     * Binary gcd of two non-negative longs.
+     * @param a first number
+     * @param b second number
+     * @return greatest common divisor of a and b
+     */
+    public static long gcd(long a, long b) {
+        if (a == 0) return b;
+        if (b == 0) return a;
+
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        while (b != 0) {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    /**
+     * Returns the floor of the square root of {@code n}.
+     * @param n non-negative number
+     * @return floor(sqrt(n))
+     */
+    public static long sqrt(long n) {
+        long r = (long) Math.sqrt((double) n);
+
+        // Double only has 53 bits, so the root may be off by one either way
+        while (r * r > n) r--;
+        while ((r + 1) * (r + 1) <= n) r++;
+        return r;
+    }
+
+    private static long cbrt(long n) {
+        long r = (long) Math.cbrt((double) n);
+        while (r * r * r > n) r--;
+        while ((r + 1) * (r + 1) * (r + 1) <= n) r++;
+        return r;
+    }
+
+    /**
+     * Arithmetic mod an odd n less than 2^63 in Montgomery form, where x is represented by {@code x * 2^64 mod n}.
+     */
+    private static final class Montgomery {
+
+        private final long n;
+
+        // n^-1 mod 2^64
+        private final long nInv;
+
+        // 2^64 mod n, the Montgomery form of 1, and 2^128 mod n, for converting into Montgomery form
+        private final long one, r2;
+
+        Montgomery(long n) {
+            this.n = n;
+
+            // Each step of Newton's method doubles the number of correct bits, starting from 3 since n * n = 1 mod 8
+            long inv = n;
+            for (int i = 0; i < 5; i++) inv *= 2 - n * inv;
+            nInv = inv;
+
+            one = (Long.remainderUnsigned(-1L, n) + 1) % n;
+            long r = one;
+            for (int i = 0; i < 64; i++) r = add(r, r);
+            r2 = r;
+        }
+
+        /**
+         * Returns {@code a * b * 2^-64 mod n} for a, b in [0, n).
+         */
+        long multiply(long a, long b) {
+            long lo = a * b;
+            long hi = Math.multiplyHigh(a, b);
+
+            // m * n has the same low 64 bits as a * b, so subtracting leaves only the high bits
+            long m = lo * nInv;
+            long mnHi = Math.multiplyHigh(m, n) + ((m >> 63) & n);
+            long t = hi - mnHi;
+            return (t < 0) ? t + n : t;
+        }
+
+        long add(long a, long b) {
+            long s = a + b;
+            return (s >= n || s < 0) ? s - n : s;
+        }
+
+        long toMontgomery(long a) {
+            return multiply(a % n, r2);
+        }
+
+        long pow(long a, long e) {
+            long result = one;
+            while (e != 0) {
+                if ((e & 1) == 1) result = multiply(result, a);
+                a = multiply(a, a);
+                e >>>= 1;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package QS;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the next family of polynomials for a {@code SIQS} in the background, so that the sieve
+ * does not have to stop while a new coefficient 'a' is chosen and all of its values are computed.
+ * Each time a family is taken, the computation of the one after it is started.
+ */
+public class FamilyGenerator {
+
+    private final SIQS qs;
+    private final ExecutorService executor;
+    private Future<PolyFamily> next;
+
+    /**
+     * Creates a new generator, immediately starting the computation of its first family.
+     * @param qs sieve whose factor base families are computed for
+     * @param executor executor that families are computed on
+     */
+    public FamilyGenerator(SIQS qs, ExecutorService executor) {
+        this.qs = qs;
+        this.executor = executor;
+        next = executor.submit(qs::newFamily);
+    }
+
+    /**
+     * Returns the family computed in the background, waiting for it if it is not yet finished, and
+     * starts computing the next one. If interrupted while waiting, or if computing it was cancelled, the
+     * family is computed on the current thread instead, with the interrupt status left set.
+     * @return new family of polynomials
+     */
+    public PolyFamily next() {
+        PolyFamily family;
+        try {
+            family = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            next.cancel(true);
+            family = qs.newFamily();
+        } catch (CancellationException e) {
+            family = qs.newFamily();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        next = executor.submit(qs::newFamily);
+        return family;
+    }
+
+    /**
+     * Stops computing the next family, which is then computed on the current thread if it is taken.
+     */
+    public void cancel() {
+        next.cancel(true);
+    }
+}
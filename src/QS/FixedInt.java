@@ -0,0 +1,245 @@
+package QS;
+
+import java.math.BigInteger;
+
+/**
+ * Mutable signed integer of a fixed number of 64-bit limbs, for evaluating polynomials and trial dividing
+ * their values without allocating. The magnitude is stored in {@code limbs} with the least significant
+ * limb first, each limb read as unsigned, and the sign separately.
+ *
+ * <p>Every operation writes its result into {@code this}, and no operation checks for overflow, so the
+ * width must be chosen large enough for every value that will be computed. Division is only by positive
+ * ints, done 32 bits at a time so that each step fits in a long.</p>
+ */
+public final class FixedInt {
+
+    private static final long LOW = 0xffffffffL;
+
+    private final long[] limbs;
+    private boolean negative;
+
+    /**
+     * Creates a new integer, initially 0, of {@code nLimbs} 64-bit limbs.
+     * @param nLimbs number of limbs
+     */
+    public FixedInt(int nLimbs) {
+        if (nLimbs < 1) {
+            throw new IllegalArgumentException("Number of limbs must be positive: " + nLimbs);
+        }
+        limbs = new long[nLimbs];
+        negative = false;
+    }
+
+    /**
+     * Creates a new integer of {@code nLimbs} 64-bit limbs, equal to {@code n}.
+     * @param n value of integer
+     * @param nLimbs number of limbs
+     * @throws ArithmeticException if {@code n} does not fit in {@code nLimbs} limbs
+     */
+    public FixedInt(BigInteger n, int nLimbs) {
+        this(nLimbs);
+        set(n);
+    }
+
+    /**
+     * Returns the number of limbs needed for every integer of absolute value less than 2^bits.
+     * @param bits number of bits
+     * @return number of limbs
+     */
+    public static int limbsFor(int bits) {
+        return Math.max(1, (bits + 63) >>> 6);
+    }
+
+    public int nLimbs() {
+        return limbs.length;
+    }
+
+    /**
+     * Sets this integer to {@code n}.
+     * @param n value of integer
+     * @throws ArithmeticException if {@code n} does not fit in this integer
+     */
+    public void set(BigInteger n) {
+        BigInteger abs = n.abs();
+        if (abs.bitLength() > (limbs.length << 6)) {
+            throw new ArithmeticException(n + " does not fit in " + limbs.length + " limbs");
+        }
+        for (int i = 0; i < limbs.length; i++) {
+            limbs[i] = abs.shiftRight(i << 6).longValue();
+        }
+        negative = n.signum() < 0;
+    }
+
+    /**
+     * Sets this integer to {@code n}, which must have the same number of limbs.
+     * @param n value of integer
+     */
+    public void set(FixedInt n) {
+        System.arraycopy(n.limbs, 0, limbs, 0, limbs.length);
+        negative = n.negative;
+    }
+
+    /**
+     * Sets this integer to {@code p(x)}, evaluating {@code p} with Horner's method where {@code coeffs}
+     * are the coefficients of {@code p} starting with the highest degree.
+     * @param coeffs coefficients of polynomial, each with the same number of limbs as this integer
+     * @param x input to polynomial
+     */
+    public void evaluate(FixedInt[] coeffs, int x) {
+        set(coeffs[0]);
+        for (int i = 1; i < coeffs.length; i++) {
+            multiply(x);
+            add(coeffs[i]);
+        }
+    }
+
+    /**
+     * Multiplies this integer by {@code x}.
+     * @param x value to multiply by
+     */
+    public void multiply(int x) {
+        if (x < 0) negative = !negative;
+
+        // Absolute value of Integer.MIN_VALUE still fits as a long
+        long s = Math.abs((long) x);
+        long carry = 0, lo, hi;
+        for (int i = 0; i < limbs.length; i++) {
+            lo = limbs[i] * s;
+
+            // multiplyHigh is signed, so if the top bit of the limb is set s is added back in
+            hi = Math.multiplyHigh(limbs[i], s) + ((limbs[i] >> 63) & s);
+            lo += carry;
+            if (Long.compareUnsigned(lo, carry) < 0) hi++;
+            limbs[i] = lo;
+            carry = hi;
+        }
+        if (isZero()) negative = false;
+    }
+
+    /**
+     * Adds {@code n} to this integer.
+     * @param n value to add, with the same number of limbs as this integer
+     */
+    public void add(FixedInt n) {
+        if (negative == n.negative) {
+            addMagnitude(n.limbs);
+        } else if (compareMagnitude(n.limbs) >= 0) {
+            subtractMagnitude(n.limbs);
+            if (isZero()) negative = false;
+        } else {
+            // |n| > |this| so the result is |n| - |this| with the sign of n
+            long borrow = 0, a, b, d;
+            for (int i = 0; i < limbs.length; i++) {
+                a = n.limbs[i];
+                b = limbs[i];
+                d = a - b - borrow;
+                borrow = (Long.compareUnsigned(a, b) < 0 || (a == b && borrow != 0)) ? 1 : 0;
+                limbs[i] = d;
+            }
+            negative = n.negative;
+        }
+    }
+
+    private void addMagnitude(long[] n) {
+        long carry = 0, sum;
+        for (int i = 0; i < limbs.length; i++) {
+            sum = limbs[i] + n[i] + carry;
+            carry = (Long.compareUnsigned(sum, limbs[i]) < 0 || (carry != 0 && sum == limbs[i])) ? 1 : 0;
+            limbs[i] = sum;
+        }
+    }
+
+    private void subtractMagnitude(long[] n) {
+        long borrow = 0, a, d;
+        for (int i = 0; i < limbs.length; i++) {
+            a = limbs[i];
+            d = a - n[i] - borrow;
+            borrow = (Long.compareUnsigned(a, n[i]) < 0 || (a == n[i] && borrow != 0)) ? 1 : 0;
+            limbs[i] = d;
+        }
+    }
+
+    private int compareMagnitude(long[] n) {
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            if (limbs[i] != n[i]) return Long.compareUnsigned(limbs[i], n[i]);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns this integer mod {@code p}, of the absolute value of this integer if negative.
+     * @param p positive int to divide by
+     * @return |this| mod p
+     */
+    public int mod(int p) {
+        long r = 0;
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            // r < p < 2^31 so r * 2^32 + 32 bits is always less than 2^63
+            r = ((r << 32) | (limbs[i] >>> 32)) % p;
+            r = ((r << 32) | (limbs[i] & LOW)) % p;
+        }
+        return (int) r;
+    }
+
+    /**
+     * Divides this integer by {@code p}, setting it to the quotient.
+     * @param p positive int to divide by
+     * @return remainder of |this| divided by p
+     */
+    public int divide(int p) {
+        long r = 0, hi, lo;
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            hi = (r << 32) | (limbs[i] >>> 32);
+            r = hi % p;
+            lo = (r << 32) | (limbs[i] & LOW);
+            r = lo % p;
+            limbs[i] = ((hi / p) << 32) | (lo / p);
+        }
+        if (isZero()) negative = false;
+        return (int) r;
+    }
+
+    public boolean isZero() {
+        for (long limb : limbs) {
+            if (limb != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bits in the absolute value of this integer.
+     * @return bit length of |this|
+     */
+    public int bitLength() {
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            if (limbs[i] != 0) return (i << 6) + Long.SIZE - Long.numberOfLeadingZeros(limbs[i]);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the lowest 64 bits of the absolute value of this integer, which is the absolute value
+     * if {@code bitLength() < 64}.
+     * @return |this| mod 2^64
+     */
+    public long longValue() {
+        return limbs[0];
+    }
+
+    public int signum() {
+        return isZero() ? 0 : (negative ? -1 : 1);
+    }
+
+    public BigInteger toBigInteger() {
+        BigInteger n = BigInteger.ZERO;
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            n = n.shiftLeft(64).or(new BigInteger(Long.toUnsignedString(limbs[i])));
+        }
+        return negative ? n.negate() : n;
+    }
+
+    @Override
+    public String toString() {
+        return toBigInteger().toString();
+    }
+}
@@ -0,0 +1,145 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Linear algebra done online while sieving, so that a factor can be found as soon as the relations have a
+ * dependency that gives one, instead of waiting for the number of relations to exceed the size of the factor
+ * base. Each relation is reduced against an echelon basis of the parity vectors of the relations before it as
+ * it arrives, and if it reduces to 0, the relations it was reduced by, with it, are a dependency whose square
+ * root is taken right away.
+ *
+ * <p>Basis vectors are bit-packed, with each one kept at the index of its lowest set bit, so reducing a
+ * relation is a single pass over its set bits from lowest to highest. Along with each basis vector is the set
+ * of relations summed to make it, as a bitset over the order the relations arrived in. These sets become
+ * dense as the basis grows, taking about {@code n^2 / 8} bytes over {@code n} relations, so this is meant
+ * for numbers whose factor base is small.</p>
+ */
+public class IncrementalSolver {
+
+    private final QuadraticSieve qs;
+
+    // Number of words in a parity vector
+    private final int words;
+
+    // Basis vector and relations summed to make it, at the index of its lowest set bit, or null
+    private final long[][] basis;
+    private final long[][] combination;
+
+    // Every relation added, in order, including those that reduced to 0
+    private final ArrayList<Relation> relations = new ArrayList<>();
+
+    private int dependencies = 0;
+
+    private volatile BigInteger factor = null;
+
+    /**
+     * Creates an empty solver for relations over the primes < F of {@code qs}.
+     * @param qs sieve whose N and primes < F the relations are over
+     */
+    public IncrementalSolver(QuadraticSieve qs) {
+        this.qs = qs;
+        words = (qs.matrixColumns() + 63) >>> 6;
+        basis = new long[qs.matrixColumns()][];
+        combination = new long[qs.matrixColumns()][];
+    }
+
+    /**
+     * Reduces the parity vector of {@code relation} against the basis, adding it to the basis if it does not
+     * reduce to 0, and otherwise taking the square root of the dependency it completes. Relations can be added
+     * from any thread, and once a non-trivial factor is found, every relation after is ignored.
+     * @param relation relation to add
+     * @return true if this relation gave a non-trivial factor of N
+     */
+    public synchronized boolean add(Relation relation) {
+        if (factor != null) return false;
+
+        long[] vector = new long[words];
+        for (int j : relation.columns(qs.primesLTF.length)) vector[j >>> 6] |= 1L << j;
+
+        int n = relations.size();
+        relations.add(relation);
+        long[] sum = new long[(n >>> 6) + 1];
+        sum[n >>> 6] = 1L << n;
+
+        for (int w = 0; w < words; w++) {
+            while (vector[w] != 0) {
+                int j = (w << 6) + Long.numberOfTrailingZeros(vector[w]);
+                if (basis[j] == null) {
+                    basis[j] = vector;
+                    combination[j] = sum;
+                    return false;
+                }
+
+                // Every bit of basis[j] below j is 0, so this only clears bit j and changes higher bits
+                long[] b = basis[j];
+                for (int k = w; k < words; k++) vector[k] ^= b[k];
+                long[] c = combination[j];
+                for (int k = 0; k < c.length; k++) sum[k] ^= c[k];
+            }
+        }
+
+        dependencies++;
+        return tryDependency(sum);
+    }
+
+    /**
+     * Takes the square root of the relations in {@code sum}, whose parity vectors sum to 0.
+     */
+    private boolean tryDependency(long[] sum) {
+        int size = 0;
+        for (long word : sum) size += Long.bitCount(word);
+
+        Relation[] dependency = new Relation[size];
+        int i = 0;
+        for (int w = 0; w < sum.length; w++) {
+            for (long word = sum[w]; word != 0; word &= word - 1) {
+                dependency[i++] = relations.get((w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+
+        int[] rows = new int[size];
+        Arrays.setAll(rows, k -> k);
+        BigInteger p = new SquareRoot(qs, dependency).tryDependency(rows);
+        if (p == null) return false;
+        factor = p;
+        return true;
+    }
+
+    /**
+     * Returns the non-trivial factor of N found, if any.
+     * @return factor of N, or null if no dependency has given a non-trivial factor yet
+     */
+    public BigInteger getFactor() {
+        return factor;
+    }
+
+    /**
+     * Returns the number of dependencies found, each of which has been tried.
+     * @return number of relations that reduced to 0
+     */
+    public synchronized int getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Returns the number of relations added before a factor was found.
+     * @return number of relations reduced
+     */
+    public synchronized int size() {
+        return relations.size();
+    }
+
+    /**
+     * Removes every relation and basis vector, and any factor found.
+     */
+    public synchronized void clear() {
+        relations.clear();
+        Arrays.fill(basis, null);
+        Arrays.fill(combination, null);
+        dependencies = 0;
+        factor = null;
+    }
+}
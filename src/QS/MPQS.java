@@ -103,20 +103,20 @@ public class MPQS extends QuadraticSieve {
     }
 
     @Override
-    public void sieve() {
-        int m2_1 = m + m + 1;
-        Arrays.fill(sieve_array, 0);
+    protected void sieveBlock(int lo, int hi) {
+        Arrays.fill(sieve_array, lo, hi, (byte) 0);
 
         // For 2, just sieve with soln1, not soln2
-        int i_min = -((m + soln1[0]) / 2);
-        for (int j = (soln1[0] + (i_min * 2)) + m; j < m2_1; j += 2) {
+        if (small_prime_index == 0) {
+            for (int j = lo + Math.floorMod(soln1[0] + m - lo, 2); j < hi; j += 2) {
 
-            // log2(2) = 1 so just add 1
-            sieve_array[j]++;
+                // log2(2) = 1 so just add 1
+                sieve_array[j]++;
+            }
         }
 
-        for (int p = 1; p < factor_base.length; p++) {
-            sieveIndex(p);
+        for (int p = Math.max(1, small_prime_index); p < factor_base.length; p++) {
+            sieveIndex(p, lo, hi);
         }
     }
 
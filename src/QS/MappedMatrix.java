@@ -0,0 +1,162 @@
+package QS;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Sparse matrix over GF(2) stored by column in a file, which is mapped into memory instead of read into
+ * heap, so that the operating system pages it in as Block Lanczos streams through its columns and can page
+ * it back out when memory is short. The layout is the same as {@link SparseMatrix}: the number of rows and
+ * columns and the weight, then the offset of each column, then the row indices of every column in order,
+ * all in native byte order.
+ *
+ * <p>A single mapping is limited to 2GB, so the row indices are mapped in segments of 2^28 ints.</p>
+ */
+public final class MappedMatrix implements RelationMatrix {
+
+    private static final int SEGMENT_BITS = 28;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    // Bytes of header, holding the number of rows and columns and the weight
+    private static final int HEADER = 16;
+
+    private final int nRows;
+    private final int nCols;
+    private final long weight;
+    private final LongBuffer colStart;
+    private final IntBuffer[] segments;
+
+    private MappedMatrix(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.nativeOrder());
+        channel.read(header, 0);
+        header.flip();
+        nRows = header.getInt();
+        nCols = header.getInt();
+        weight = header.getLong();
+
+        long offset = HEADER;
+        colStart = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * (nCols + 1))
+                .order(ByteOrder.nativeOrder()).asLongBuffer();
+        offset += 8L * (nCols + 1);
+
+        segments = new IntBuffer[(int) ((weight + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long size = Math.min(1L << SEGMENT_BITS, weight - ((long) i << SEGMENT_BITS));
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4 * size)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            offset += 4 * size;
+        }
+    }
+
+    /**
+     * Writes the matrix whose column j is 1 exactly on the rows {@code indices[j]} to {@code file},
+     * replacing anything already in it, and maps it.
+     * @param file file to write matrix to
+     * @param indices rows of each column that are 1
+     * @param nRows number of rows
+     * @return matrix mapped from {@code file}
+     * @throws IOException if the file cannot be written or mapped
+     */
+    public static MappedMatrix write(Path file, int[][] indices, int nRows) throws IOException {
+        return write(file, indices.length, nRows, j -> indices[j]);
+    }
+
+    /**
+     * Writes the matrix whose column j is 1 exactly on the rows {@code column.apply(j)} to {@code file},
+     * replacing anything already in it, and maps it. Each column is asked for twice, once for its length and
+     * once for its rows, and is written out as soon as it is given, so no more than one column needs to be
+     * in memory at once.
+     * @param file file to write matrix to
+     * @param nCols number of columns
+     * @param nRows number of rows
+     * @param column rows of each column that are 1
+     * @return matrix mapped from {@code file}
+     * @throws IOException if the file cannot be written or mapped
+     */
+    public static MappedMatrix write(Path file, int nCols, int nRows, IntFunction<int[]> column) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            // Weight is only known once every column has been seen, so the header is written last
+            channel.position(HEADER);
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.nativeOrder());
+
+            long offset = 0;
+            buffer.putLong(offset);
+            for (int j = 0; j < nCols; j++) {
+                if (buffer.remaining() < 8) drain(channel, buffer);
+                offset += column.apply(j).length;
+                buffer.putLong(offset);
+            }
+            for (int j = 0; j < nCols; j++) {
+                for (int i : column.apply(j)) {
+                    if (buffer.remaining() < 4) drain(channel, buffer);
+                    buffer.putInt(i);
+                }
+            }
+            drain(channel, buffer);
+
+            buffer.putInt(nRows).putInt(nCols).putLong(offset);
+            buffer.flip();
+            for (long position = 0; buffer.hasRemaining(); ) position += channel.write(buffer, position);
+
+            return new MappedMatrix(channel);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private int row(long k) {
+        return segments[(int) (k >>> SEGMENT_BITS)].get((int) (k & SEGMENT_MASK));
+    }
+
+    @Override
+    public int nRows() {
+        return nRows;
+    }
+
+    @Override
+    public int nCols() {
+        return nCols;
+    }
+
+    @Override
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public void multiply(long[] x, long[] y, int lo, int hi) {
+        long end = colStart.get(lo);
+        for (int j = lo; j < hi; j++) {
+            long start = end;
+            end = colStart.get(j + 1);
+            long xj = x[j];
+            if (xj == 0) continue;
+            for (long k = start; k < end; k++) y[row(k)] ^= xj;
+        }
+    }
+
+    @Override
+    public void multiplyTranspose(long[] y, long[] z, int lo, int hi) {
+        long end = colStart.get(lo);
+        for (int j = lo; j < hi; j++) {
+            long start = end;
+            end = colStart.get(j + 1);
+            long sum = 0;
+            for (long k = start; k < end; k++) sum ^= y[row(k)];
+            z[j] = sum;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package QS;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the sieving stage of {@code SIQS} on multiple threads. Each thread sieves with its own {@code SIQS}
+ * created from the same parent, so that each has its own sieve array, roots, and family of polynomials
+ * for its own coefficient 'a', while every relation found is added to the relations of the parent.
+ */
+public class ParallelSieve {
+
+    // Milliseconds between each check on the progress of the sieving threads
+    protected static final long pollInterval = 100;
+
+    protected final SIQS parent;
+    protected final int nThreads;
+
+    // If not null, each polynomial is also split into segments that are sieved in parallel on this pool
+    protected ForkJoinPool segmentPool;
+
+    // Computes the next family of polynomials for each sieving thread while it sieves its current family
+    protected ExecutorService background;
+
+    public ParallelSieve(SIQS qs, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        parent = qs;
+        nThreads = threads;
+        segmentPool = null;
+    }
+
+    /**
+     * Sets the pool that each thread runs segments of its current polynomial on. If {@code pool} is null,
+     * each thread sieves the whole range of its polynomial itself.
+     * @param pool pool for sieving segments of a single polynomial in parallel
+     */
+    public void setSegmentPool(ForkJoinPool pool) {
+        segmentPool = pool;
+    }
+
+    /**
+     * Sieves on every thread until the parent sieve has at least {@code requiredRelations} relations,
+     * printing the progress if {@code QuadraticSieve.loud}.
+     * @param minTrial minimum value in sieve array for trial division to be attempted
+     * @throws InterruptedException if interrupted while waiting for the sieving threads to finish
+     */
+    public void findRelations(int minTrial) throws InterruptedException {
+        background = Executors.newFixedThreadPool(nThreads);
+        ArrayList<Runnable> tasks = tasks(minTrial);
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+        ArrayList<Future<?>> workers = new ArrayList<>(tasks.size());
+
+        for (Runnable task : tasks) {
+            workers.add(pool.submit(task));
+        }
+
+        // No new tasks, pool terminates once every worker sees that there are enough relations
+        pool.shutdown();
+
+        int relationsIncrement = parent.requiredRelations / 25;
+        int lastPrinted = 0;
+
+        try {
+            while (!pool.awaitTermination(pollInterval, TimeUnit.MILLISECONDS)) {
+                if ((parent.getRelationsFound() - lastPrinted > relationsIncrement) && QuadraticSieve.loud) {
+                    lastPrinted = parent.getRelationsFound();
+                    System.out.print("\r" + progress());
+                }
+
+                // If any worker has stopped early, it threw an exception, so stop all of them
+                for (Future<?> f : workers) {
+                    if (f.isDone()) f.get();
+                }
+            }
+
+            for (Future<?> f : workers) f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        } finally {
+            pool.shutdownNow();
+            background.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a new sieve sharing the relations of the parent, whose families of polynomials are
+     * computed ahead of time in the background.
+     * @return sieve to be run on its own thread
+     */
+    protected SIQS newWorker() {
+        SIQS worker = new SIQS(parent);
+        worker.setFamilyGenerator(new FamilyGenerator(worker, background));
+        return worker;
+    }
+
+    /**
+     * Returns the tasks that are each run on their own thread until enough relations are found.
+     * @param minTrial minimum value in sieve array for trial division to be attempted
+     * @return list of tasks to be run in parallel
+     */
+    protected ArrayList<Runnable> tasks(int minTrial) {
+        ArrayList<Runnable> tasks = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            SIQS worker = newWorker();
+            tasks.add(() -> worker.findRelations(minTrial, segmentPool));
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns the line printed to show the progress of sieving.
+     * @return current progress of sieving
+     */
+    protected String progress() {
+        return String.format("%d/%d", parent.getRelationsFound(), parent.requiredRelations);
+    }
+}
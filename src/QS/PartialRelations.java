@@ -0,0 +1,256 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Partial relations, whose g(x) is smooth except for one or two large primes less than the large prime
+ * bound, kept as a graph until they form cycles. Each large prime is a vertex, along with the vertex 1,
+ * and each partial relation is an edge between its two large primes, or between 1 and its large prime
+ * if it has only one.
+ *
+ * <p>In a cycle of partial relations {@code t_i^2 = L_i * L_i' * u_i (mod N)}, each large prime is on exactly
+ * two edges, so multiplying every relation together gives the full relation
+ * {@code (prod t_i * prod L^-1)^2 = prod u_i (mod N)}, where the second product is over the large primes of
+ * the cycle. This relation is added to the relations like any other.</p>
+ *
+ * <p>A union-find over the large primes tracks which are connected, and a spanning forest of the graph
+ * holds every edge that didn't close a cycle. An edge between two already connected vertices closes exactly
+ * one new cycle, which is the edge along with the path between its vertices in the forest, so cycles are
+ * combined as soon as they are formed. Two partial relations with the same single large prime are the
+ * smallest such cycle. Partial relations can be added from any number of threads.</p>
+ */
+public class PartialRelations {
+
+    /**
+     * Partial relation connecting vertex {@code to} of the graph to the vertex it is stored under.
+     */
+    private record Edge(long to, Relation relation) {}
+
+    private final QuadraticSieve qs;
+
+    // Largest large prime kept, any cofactor with a larger prime is discarded
+    private final long bound;
+
+    // If true, cofactors of two large primes are also kept
+    private final boolean twoPrimes;
+
+    // Parent of each vertex in union-find, where roots are their own parent, and size of component of each root
+    private final HashMap<Long, Long> parent;
+    private final HashMap<Long, Integer> size;
+
+    // Edges of the spanning forest at each vertex
+    private final HashMap<Long, ArrayList<Edge>> forest;
+
+    // Values of h(x) of every partial relation kept, so that the same one found twice is not a cycle
+    private final HashSet<BigInteger> seen;
+
+    private int nPartials, nCycles, nCombined;
+
+    // Splits cofactors of two large primes
+    private final Cofactorizer cofactorizer;
+
+    /**
+     * Creates an empty graph of partial relations, adding every full relation found by combining them
+     * to the relations of {@code qs}.
+     * @param qs sieve whose relations combined relations are added to
+     * @param bound largest large prime kept
+     * @param twoPrimes if true, relations with two large primes are kept as well as those with one
+     */
+    public PartialRelations(QuadraticSieve qs, long bound, boolean twoPrimes) {
+        this.qs = qs;
+        this.bound = bound;
+        this.twoPrimes = twoPrimes;
+        parent = new HashMap<>();
+        size = new HashMap<>();
+        forest = new HashMap<>();
+        seen = new HashSet<>();
+        cofactorizer = new Cofactorizer();
+    }
+
+    public long getBound() {
+        return bound;
+    }
+
+    /**
+     * Returns the largest cofactor that a partial relation can have.
+     * @return square of bound if keeping two large primes, otherwise bound
+     */
+    public long maxCofactor() {
+        if (!twoPrimes) return bound;
+
+        // Bound may be large enough that its square is more than can be split
+        return (bound > 2147483647L) ? Cofactorizer.maxCofactor : Math.min(bound * bound, Cofactorizer.maxCofactor);
+    }
+
+    /**
+     * Adds a partial relation with cofactor {@code cofactor}, splitting it into its large primes, and
+     * discarding it if either is larger than the bound.
+     * @param relation relation holding the primes < F of g(x) / cofactor
+     * @param cofactor part of g(x) not in the factor base, every prime of which is greater than F
+     */
+    public void add(Relation relation, long cofactor) {
+        // All primes < F have been divided out, so a cofactor less than F^2 is prime
+        long F = qs.primesLTF[qs.primesLTF.length - 1].longValue();
+        boolean prime = (cofactor / F < F) || cofactorizer.isPrime(cofactor);
+
+        if (prime) {
+            if (cofactor <= bound) add(relation, 1, cofactor);
+        } else if (twoPrimes && (cofactor <= maxCofactor())) {
+            long p = cofactorizer.split(cofactor);
+            if (p == 0) return;
+            long q = cofactor / p;
+
+            // Both are greater than F, so with cofactor at most bound^2 both are prime if both are at most bound
+            if ((p <= bound) && (q <= bound)) add(relation, Math.min(p, q), Math.max(p, q));
+        }
+    }
+
+    /**
+     * Adds the partial relation as an edge between {@code L1} and {@code L2}, combining the cycle it closes
+     * into a full relation if they are already connected.
+     */
+    private synchronized void add(Relation relation, long L1, long L2) {
+        if (!seen.add(relation.t().abs())) return;
+        nPartials++;
+
+        // Relation with the square of a large prime is already a full relation
+        if (L1 == L2) {
+            combine(new ArrayList<>(), relation, L1, L2);
+            return;
+        }
+
+        long r1 = find(L1), r2 = find(L2);
+        if (r1 == r2) {
+            combine(path(L1, L2), relation, L1, L2);
+        } else {
+            // Union by size, so that finding roots stays fast
+            int s1 = size.get(r1), s2 = size.get(r2);
+            if (s1 < s2) {
+                parent.put(r1, r2);
+                size.put(r2, s1 + s2);
+            } else {
+                parent.put(r2, r1);
+                size.put(r1, s1 + s2);
+            }
+            forest.computeIfAbsent(L1, k -> new ArrayList<>()).add(new Edge(L2, relation));
+            forest.computeIfAbsent(L2, k -> new ArrayList<>()).add(new Edge(L1, relation));
+        }
+    }
+
+    /**
+     * Returns the root of the component of {@code v}, adding {@code v} as its own component if it is new.
+     */
+    private long find(long v) {
+        Long p = parent.get(v);
+        if (p == null) {
+            parent.put(v, v);
+            size.put(v, 1);
+            return v;
+        }
+
+        long root = v;
+        while (parent.get(root) != root) root = parent.get(root);
+
+        // Path compression
+        long next;
+        while (v != root) {
+            next = parent.get(v);
+            parent.put(v, root);
+            v = next;
+        }
+        return root;
+    }
+
+    /**
+     * Returns the edges of the path from {@code from} to {@code to} in the spanning forest, which exists
+     * since both are in the same component.
+     */
+    private ArrayList<Edge> path(long from, long to) {
+        HashMap<Long, Edge> reached = new HashMap<>();
+        HashMap<Long, Long> previous = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        queue.add(from);
+        previous.put(from, from);
+
+        long v;
+        while (!queue.isEmpty() && !previous.containsKey(to)) {
+            v = queue.poll();
+            for (Edge e : forest.getOrDefault(v, new ArrayList<>())) {
+                if (!previous.containsKey(e.to())) {
+                    previous.put(e.to(), v);
+                    reached.put(e.to(), e);
+                    queue.add(e.to());
+                }
+            }
+        }
+
+        ArrayList<Edge> path = new ArrayList<>();
+        for (v = to; v != from; v = previous.get(v)) path.add(reached.get(v));
+        return path;
+    }
+
+    /**
+     * Combines the relations along {@code path} and {@code closing}, which together form a cycle whose
+     * vertices are {@code L1}, {@code L2} and every vertex the path reaches, into a full relation.
+     */
+    private void combine(ArrayList<Edge> path, Relation closing, long L1, long L2) {
+        nCycles++;
+
+        Relation product = closing;
+
+        /*
+        Every large prime of the cycle is on two of its edges, so each is divided out once. The path reaches
+        every vertex of the cycle except L1, and a relation with the square of L1 is a cycle on its own
+         */
+        BigInteger L = BigInteger.valueOf(L1);
+        for (Edge e : path) {
+            product = product.multiply(e.relation(), product.t().multiply(e.relation().t()).mod(qs.N));
+            L = L.multiply(BigInteger.valueOf(e.to()));
+        }
+
+        if (!L.gcd(qs.N).equals(BigInteger.ONE)) return;
+
+        BigInteger t = product.t().multiply(L.modInverse(qs.N)).mod(qs.N);
+        if (qs.addRelation(new Relation(product.primes(), product.powers(), product.negative(), t))) nCombined++;
+    }
+
+    public Cofactorizer getCofactorizer() {
+        return cofactorizer;
+    }
+
+    /**
+     * Returns the number of partial relations kept.
+     * @return number of edges in graph
+     */
+    public synchronized int size() {
+        return nPartials;
+    }
+
+    /**
+     * Returns the number of cycles found in the graph of partial relations.
+     * @return number of cycles
+     */
+    public synchronized int getCycles() {
+        return nCycles;
+    }
+
+    /**
+     * Returns the number of full relations found by combining partial relations.
+     * @return number of combined relations
+     */
+    public synchronized int getCombined() {
+        return nCombined;
+    }
+
+    public synchronized void clear() {
+        parent.clear();
+        size.clear();
+        forest.clear();
+        seen.clear();
+        nPartials = nCycles = nCombined = 0;
+    }
+}
@@ -0,0 +1,26 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+
+/**
+ * Family of polynomials for a single coefficient 'a' in the Self-Initializing Quadratic Sieve.
+ *
+ * <p>Holds everything computed when a new 'a' is chosen: the values B_l whose sums (with signs)
+ * give each b, {@code 2 * B_l * a^-1 mod p} for each prime p in the factor base, the indices of the
+ * primes that do and do not divide 'a' (the latter in ascending order), and the roots and polynomials
+ * g, h of the first polynomial.</p>
+ */
+public record PolyFamily(BigInteger a, BigInteger b, BigInteger[] B, int[][] B_ainv2,
+                         HashSet<Integer> a_factors, int[] a_non_factors,
+                         int[] soln1, int[] soln2, QSPoly g, QSPoly h) {
+
+    /**
+     * Returns the number of polynomials in this family, which is 2^(s-1) where s is the number
+     * of primes dividing 'a'.
+     * @return number of polynomials that can be generated for 'a'
+     */
+    public int nPolynomials() {
+        return 1 << (a_factors.size() - 1);
+    }
+}
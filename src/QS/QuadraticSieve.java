@@ -3,8 +3,10 @@ package QS;
 import java.math.BigInteger;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class is base class for both {@code SIQS} and {@code MPQS} as both share the same computation
@@ -20,6 +22,54 @@ public abstract class QuadraticSieve {
 
     public static boolean loud = true;
 
+    // Scanner of sieve array for candidates, using the Vector API if available
+    protected static final CandidateScanner scanner = CandidateScanner.getInstance();
+
+    // Size of each block of the sieve array that is sieved by every prime before moving to the next block,
+    // should be small enough that a block fits in the L1 or L2 cache
+    public static int blockSize = 1 << 15;
+
+    // Primes below this bound are not sieved with, since they write to the sieve array the most while adding
+    // the least to each value. Trial division still divides by them, and sieve threshold is lowered to make up for them
+    public static int smallPrimeBound = 0;
+
+    // Primes at least this bound are found for each candidate by sieving again instead of checking their roots
+    public static int resieveBound = Integer.MAX_VALUE;
+
+    // If positive, candidates are tested for smoothness this many at a time with product and remainder trees
+    public static int batchSize = 0;
+
+    // If positive, relations smooth except for one prime less than this many times F are kept and combined
+    public static int largePrimeMultiplier = 0;
+
+    // If true, relations smooth except for two such primes are also kept, and combined through cycles
+    public static boolean doubleLargePrimes = false;
+
+    // Number of threads the matrix is reduced with in the linear algebra stage
+    public static int matrixThreads = Runtime.getRuntime().availableProcessors();
+
+    // Matrices of at least this many relations are solved with Block Lanczos instead of dense elimination
+    public static int lanczosBound = 1000;
+
+    // If positive, cliques are removed from the matrix until only this many more relations than primes are left,
+    // then relations sharing a prime no other relation has are merged
+    public static int filterExcess = 0;
+
+    // If not null, the matrix for Block Lanczos is written to a file in this directory and mapped, instead of
+    // being kept in heap
+    public static String matrixDirectory = null;
+
+    // Number of relations sieved before trying linear algebra again when it gives no factor, or 0 for 5% of the
+    // relations first required
+    public static int extraRelations = 0;
+
+    // If true, each relation is reduced against the relations before it as it is found, stopping sieving as soon as
+    // a dependency gives a factor
+    public static boolean onlineSolver = false;
+
+    // Largest number of odd primes in a relation made by merging
+    protected static final int maxMergeWeight = 100;
+
     // Both integer and BigInteger versions of factor base are public as well as N
     public final BigInteger N;
 
@@ -29,8 +79,11 @@ public abstract class QuadraticSieve {
 
     public final BigInteger[] primesLTF;
 
-    public final int requiredRelations;
-    protected int relationsFound;
+    // Raised each time linear algebra fails to give a factor, so that more relations are sieved
+    public int requiredRelations;
+
+    // Shared between every sieve created from the same instance, so that relations can be added from any thread
+    protected final RelationStore relations;
 
     // Everything else is protected so that both MPQS and SIQS can have access, but they are not needed outside
 
@@ -38,17 +91,55 @@ public abstract class QuadraticSieve {
     protected final BigInteger[] t_sqrt;
     protected final int[] log_p;
 
+    // Index of each prime of the factor base in the array of all primes < F
+    protected final int[] ltf_index;
+
     protected final int m;
     protected final BigInteger M;
 
     protected BigInteger a, b;
 
+    // Indices in factor base of primes dividing 'a', which divide every value of the current polynomial
+    protected int[] a_factor_indices;
+
+    protected final TrialDivider divider;
+
+    // Batch smoothness test shared by every sieve created from the same instance, or null if not batching
+    protected final BatchSmoothness batch;
+
+    // Partial relations shared by every sieve created from the same instance, or null if not kept
+    protected final PartialRelations partials;
+
+    // Linear algebra done as relations are found, shared by every sieve created from the same instance, or null if off
+    protected final IncrementalSolver incremental;
+
     protected int[] soln1, soln2;
-    protected long[] sieve_array;
+
+    // Sums of logs are small enough to fit in a byte, so each value is read as an unsigned byte
+    protected byte[] sieve_array;
+
+    // Index of the first prime in factor base that is at least smallPrimeBound, primes before it are not sieved
+    protected final int small_prime_index;
+
+    // Index of the first prime in factor base that is at least resieveBound, this prime and all after it are resieved
+    protected final int resieve_index;
+
+    // Index of the first prime in factor base that is at least the size of a block, this prime and all
+    // primes after it hit each block at most a few times, so they are sieved from buckets instead
+    protected final int large_prime_index;
+
+    /*
+    Bucket of each block of the sieve array, holding every hit of a large prime in that block. The upper
+    32 bits of each hit are the index of the prime in the factor base and its log (in the lowest 8 bits)
+    and the lower 32 bits are the offset of the hit from the start of the block
+     */
+    protected long[][] buckets;
+    protected int[] bucket_sizes;
+
+    // Relations the matrix was constructed from, and the columns with a 1 in each row of the matrix mod 2
+    protected Relation[] smooth_relations;
     protected int[][] smooth_matrix;
     protected BigInteger[] polynomialInput;
-    protected ArrayList<int[]> smooth_relations_u;
-    protected ArrayList<BigInteger> smooth_relations_t;
 
     public QuadraticSieve(BigInteger n, BigInteger[] primes) {
         N = n;
@@ -75,6 +166,14 @@ public abstract class QuadraticSieve {
             i++;
         }
 
+        // Factor base is a subsequence of primes < F so both can be walked through at once
+        ltf_index = new int[fbSize];
+        int j = 0;
+        for (i = 0; i < fbSize; i++) {
+            while (!primesLTF[j].equals(FactorBase[i])) j++;
+            ltf_index[i] = j;
+        }
+
         // Array of square roots of N mod p
         t_sqrt = new BigInteger[fbSize];
 
@@ -102,14 +201,89 @@ public abstract class QuadraticSieve {
         soln1 = new int[fbSize];
         soln2 = new int[fbSize];
         requiredRelations = (int) Math.round(fbSize * smoothRelationRatio);
-        smooth_relations_u = new ArrayList<>(requiredRelations);
-        smooth_relations_t = new ArrayList<>(requiredRelations);
+        relations = new RelationStore(Runtime.getRuntime().availableProcessors());
+        smooth_relations = null;
         smooth_matrix = null;
         polynomialInput = null;
-        relationsFound = 0;
 
         // Initialize sieve array here, gets filled with 0's each time sieve is called
-        sieve_array = new long[m + m + 1];
+        sieve_array = new byte[m + m + 1];
+
+        i = 0;
+        while ((i < fbSize) && (factor_base[i] < smallPrimeBound)) i++;
+        small_prime_index = i;
+
+        a_factor_indices = new int[0];
+        divider = new TrialDivider(this);
+        long largePrimeBound = (long) largePrimeMultiplier * primesLTF[primesLTF.length - 1].longValue();
+        partials = (largePrimeMultiplier > 0) ? new PartialRelations(this, largePrimeBound, doubleLargePrimes) : null;
+        batch = (batchSize > 0) ? new BatchSmoothness(this, batchSize) : null;
+        incremental = onlineSolver ? new IncrementalSolver(this) : null;
+
+        i = 0;
+        while ((i < fbSize) && (factor_base[i] < resieveBound)) i++;
+        resieve_index = i;
+
+        i = 0;
+        while ((i < fbSize) && (factor_base[i] < blockSize)) i++;
+        large_prime_index = i;
+        initBuckets();
+    }
+
+    /**
+     * Creates a new sieve sharing the factor base, sieve range, and found relations of {@code qs}, but
+     * with its own roots and sieve array, so that the new sieve can be run on a different thread
+     * than {@code qs}. Any relations found by either sieve are added to the same lists.
+     * @param qs sieve whose startup data and relations are shared
+     */
+    protected QuadraticSieve(QuadraticSieve qs) {
+        N = qs.N;
+        primesLTF = qs.primesLTF;
+        factor_base = qs.factor_base;
+        FactorBase = qs.FactorBase;
+        t_sqrt = qs.t_sqrt;
+        log_p = qs.log_p;
+        ltf_index = qs.ltf_index;
+        m = qs.m;
+        M = qs.M;
+        requiredRelations = qs.requiredRelations;
+
+        relations = qs.relations;
+        smooth_relations = null;
+        smooth_matrix = null;
+        polynomialInput = null;
+
+        soln1 = new int[factor_base.length];
+        soln2 = new int[factor_base.length];
+        sieve_array = new byte[m + m + 1];
+
+        small_prime_index = qs.small_prime_index;
+        resieve_index = qs.resieve_index;
+        large_prime_index = qs.large_prime_index;
+        a_factor_indices = new int[0];
+        divider = qs.divider;
+        batch = qs.batch;
+        partials = qs.partials;
+        incremental = qs.incremental;
+        initBuckets();
+    }
+
+    /**
+     * Allocates a bucket for each block of the sieve array, with room for about the expected number
+     * of large prime hits in a block.
+     */
+    private void initBuckets() {
+        int nBlocks = (sieve_array.length + blockSize - 1) / blockSize;
+
+        // Each prime p has 2 roots, so hits a block 2 * blockSize / p times
+        double hits = 0;
+        for (int i = large_prime_index; i < factor_base.length; i++) {
+            hits += 2.0 * blockSize / factor_base[i];
+        }
+
+        int capacity = (int) Math.ceil(hits * 1.1) + 16;
+        buckets = new long[nBlocks][capacity];
+        bucket_sizes = new int[nBlocks];
     }
 
     /**
@@ -170,65 +344,212 @@ public abstract class QuadraticSieve {
         else return 900000;
     }
 
+    /**
+     * Returns the amount the sum of logs at each index of the sieve array is expected to be missing from
+     * not sieving with primes below {@code smallPrimeBound}, which the sieve threshold should be lowered by.
+     * Each prime p divides 2 of every p values (one for each root), plus an extra 2 of every p^2 and so on,
+     * so on average contributes {@code 2 * log(p) / (p - 1)}.
+     * @return expected sum of logs of primes not sieved with
+     */
+    public int smallPrimeCorrection() {
+        double expected = 0;
+        for (int i = 0; i < small_prime_index; i++) {
+            expected += 2.0 * log_p[i] / (factor_base[i] - 1);
+        }
+        return (int) Math.round(expected);
+    }
+
+    /**
+     * Returns how much lower the sieve threshold should be so that more relations with two large primes pass it.
+     * Lowering it by the whole log of the large prime bound lets through far more candidates than are worth
+     * trial dividing, so it is only lowered by half.
+     * @return half the log of large prime bound if keeping relations with two large primes, otherwise 0
+     */
+    public int largePrimeCorrection() {
+        if ((partials == null) || !doubleLargePrimes) return 0;
+        return (64 - Long.numberOfLeadingZeros(partials.getBound())) / 2;
+    }
+
     public boolean enoughRelations() {
-        return (relationsFound >= requiredRelations);
+        return (relations.size() >= requiredRelations) || (getOnlineFactor() != null);
+    }
+
+    /**
+     * Returns the factor found by reducing relations as they were found, if reducing them online.
+     * @return non-trivial factor of N, or null if none has been found or relations are not reduced online
+     */
+    public BigInteger getOnlineFactor() {
+        return (incremental == null) ? null : incremental.getFactor();
+    }
+
+    /**
+     * Raises the number of relations required to {@code extra} more than the number found so far, keeping every
+     * relation already found.
+     * @param extra number of relations to find before there are enough again
+     */
+    public void requireMoreRelations(int extra) {
+        requiredRelations = relations.size() + extra;
     }
 
     public int getRelationsFound() {
-        return relationsFound;
+        return relations.size();
     }
 
     public void clearRelations() {
-        relationsFound = 0;
-        smooth_relations_u.clear();
-        smooth_relations_t.clear();
+        relations.clear();
+        if (partials != null) partials.clear();
+        if (incremental != null) incremental.clear();
+    }
+
+    /**
+     * Returns the largest cofactor that trial division should leave, which is 1 unless partial relations are kept.
+     * @return largest cofactor of a relation
+     */
+    public long maxCofactor() {
+        return (partials == null) ? 1 : partials.maxCofactor();
     }
 
     /**
      * Sieve along the range of (-M, M), filling {@code this.sieve_array} in the process.
      */
-    public abstract void sieve();
+    public void sieve() {
+        sieveRange(0, sieve_array.length);
+    }
+
+    /**
+     * Sieves the current polynomial by splitting the range (-M, M) into segments that are each
+     * sieved as separate tasks on {@code pool}, filling {@code this.sieve_array} in the process.
+     * @param pool pool that the segments are run on
+     */
+    public void sieve(ForkJoinPool pool) {
+        pool.invoke(new SegmentSieve(this, null, null, 0, 0, sieve_array.length));
+    }
+
+    /**
+     * Sieves the current polynomial by splitting the range (-M, M) into segments that are each sieved
+     * and then trial divided as separate tasks on {@code pool}.
+     * @param pool pool that the segments are run on
+     * @param g polynomial to use to get smooth output
+     * @param h polynomial whose output squared is equivalent to output of {@code g} mod N
+     * @param min_val minimum value in sieve array for trial division to be attempted
+     */
+    public void sieve(ForkJoinPool pool, QSPoly g, QSPoly h, int min_val) {
+        pool.invoke(new SegmentSieve(this, g, h, min_val, 0, sieve_array.length));
+    }
+
+    /**
+     * Sieve along only the indices {@code lo <= j < hi} of {@code this.sieve_array}, which correspond
+     * to the values {@code lo - M <= x < hi - M}, leaving the rest of the array untouched. The range
+     * is sieved one block at a time, with blocks starting at multiples of {@code blockSize}.
+     * @param lo first index of sieve array to be sieved
+     * @param hi index after last index of sieve array to be sieved
+     */
+    public void sieveRange(int lo, int hi) {
+        for (int start = lo; start < hi; start = (start / blockSize + 1) * blockSize) {
+            sieveBlock(start, Math.min(hi, (start / blockSize + 1) * blockSize));
+        }
+    }
+
+    /**
+     * Sieve a single block {@code lo <= j < hi} of {@code this.sieve_array} with every prime in the
+     * factor base, first resetting the block to 0.
+     * @param lo first index of block
+     * @param hi index after last index of block
+     */
+    protected abstract void sieveBlock(int lo, int hi);
 
     public void sieveIndex(int i) {
+        sieveIndex(i, 0, sieve_array.length);
+    }
+
+    /**
+     * Adds the log of the prime {@code factor_base[i]} to every index {@code lo <= j < hi} of the sieve array
+     * where the prime divides the current polynomial, computing the first such index from the roots.
+     * @param i index of prime in factor base
+     * @param lo first index of sieve array to be sieved
+     * @param hi index after last index of sieve array to be sieved
+     */
+    public void sieveIndex(int i, int lo, int hi) {
 
         int prime = factor_base[i];
 
-        int i_min = -((m + soln1[i]) / prime);
-        for (int j = (soln1[i] + (i_min * prime)) + m; j < (m + m + 1); j += prime) {
+        // Index j corresponds to x = j - m, so the prime divides at each j = soln + m mod prime
+        for (int j = lo + Math.floorMod(soln1[i] + m - lo, prime); j < hi; j += prime) {
             sieve_array[j] += log_p[i];
         }
 
-        i_min = -((m + soln2[i]) / prime);
-        for (int j = (soln2[i] + (i_min * prime)) + m; j < (m + m + 1); j += prime) {
+        for (int j = lo + Math.floorMod(soln2[i] + m - lo, prime); j < hi; j += prime) {
             sieve_array[j] += log_p[i];
         }
     }
 
     /**
-     * Given a list of primes and a list of corresponding powers for each of those primes,
-     * return the BigInteger that is the product of each of those powers.
-     *
-     * @param powers int[] of powers of each of the factors in the factor base
-     * @return BigInteger result of taking the product of each of the primes raised to each of the
-     * powers of corresponding indices.
-     *
-     * @throws ArithmeticException if the lengths of the two arrays differ
+     * Empties the bucket of every block.
      */
-    public BigInteger evalPower(int[] powers) {
-        if (primesLTF.length != powers.length) {
-            throw new ArithmeticException("Array lengths differ: " + primesLTF.length + ", " + powers.length);
-        } else {
+    protected void clearBuckets() {
+        Arrays.fill(bucket_sizes, 0);
+    }
+
+    /**
+     * Adds every index of the sieve array where the prime {@code factor_base[i]} divides the current
+     * polynomial to the bucket of the block that index is in.
+     * @param i index of prime in factor base
+     */
+    protected void bucketIndex(int i) {
+        int prime = factor_base[i];
+        long entry = ((long) ((i << 8) | log_p[i])) << 32;
+
+        int block;
+        for (int j = Math.floorMod(soln1[i] + m, prime); j < sieve_array.length; j += prime) {
+            block = j / blockSize;
+            if (bucket_sizes[block] == buckets[block].length) {
+                buckets[block] = Arrays.copyOf(buckets[block], buckets[block].length << 1);
+            }
+            buckets[block][bucket_sizes[block]++] = entry | (j - block * blockSize);
+        }
+
+        for (int j = Math.floorMod(soln2[i] + m, prime); j < sieve_array.length; j += prime) {
+            block = j / blockSize;
+            if (bucket_sizes[block] == buckets[block].length) {
+                buckets[block] = Arrays.copyOf(buckets[block], buckets[block].length << 1);
+            }
+            buckets[block][bucket_sizes[block]++] = entry | (j - block * blockSize);
+        }
+    }
 
-            BigInteger acc = BigInteger.ONE;
-            // Otherwise, they are same size so evaluate powers
-            for (int i = 0; i < primesLTF.length; i++) {
-                // Take product of BigInteger power value
-                acc = acc.multiply(primesLTF[i].pow(powers[i]));
+    /**
+     * Adds the log of each large prime in the bucket of the block containing {@code lo} to the indices
+     * {@code lo <= j < hi} of the sieve array that the prime hits.
+     * @param lo first index of block
+     * @param hi index after last index of block
+     */
+    protected void applyBucket(int lo, int hi) {
+        int block = lo / blockSize;
+        int start = block * blockSize;
+        long[] bucket = buckets[block];
+
+        int j;
+        for (int k = 0; k < bucket_sizes[block]; k++) {
+            j = start + (int) bucket[k];
+            if ((j >= lo) && (j < hi)) {
+                sieve_array[j] += (byte) (bucket[k] >>> 32);
             }
-            return acc;
         }
     }
 
+    /**
+     * Returns g(x) of {@code relation}, the product of the powers of its primes, with its sign.
+     * @param relation relation to evaluate
+     * @return g(x) of relation, divided by any large primes it had
+     */
+    public BigInteger evalPower(Relation relation) {
+        BigInteger acc = BigInteger.ONE;
+        for (int k = 0; k < relation.primes().length; k++) {
+            acc = acc.multiply(primesLTF[relation.primes()[k]].pow(relation.powers()[k]));
+        }
+        return relation.negative() ? acc.negate() : acc;
+    }
+
     /**
      * Attempts to completely factor n using the given factor base, returning the powers of the factors
      * if number was completely factored, throwing ArithmeticException if not.
@@ -257,41 +578,189 @@ public abstract class QuadraticSieve {
     }
 
     /**
-     * Perform trial division, attempting to divide each result returned by {@code this.Q_x}, adding
-     * it to the matrix if successful. If more trial divisions were successful than the number
-     * of factors in the factor base, save the {@code LinkedList<int[]>} as an {@code int[][]}
-     * via {@code this.smooth_matrix} and return {@code true} otherwise return {@code false}.
+     * Performs trial division on every candidate in the sieve array, whose sieved sum of logs is at least
+     * {@code min_val}. Each candidate is evaluated in fixed width integers and only divided by the primes whose
+     * roots it is congruent to (or that resieving found to hit it), and is added as a relation if it is smooth,
+     * or as a partial relation if what is left is small enough. If batching, candidates are instead added to the
+     * batch smoothness test.
      *
      * @param g polynomial to use to get smooth output
+     * @param h polynomial whose output squared is equivalent to output of {@code g} mod N
+     * @param min_val minimum value in sieve array for trial division to be attempted
      */
     public void trialDivision(QSPoly g, QSPoly h, int min_val) {
-        int[] array;
-        BigInteger X, t, u;
-
-        for (int x = 0; x < sieve_array.length; x++) {
-            if (sieve_array[x] >= min_val) {
-                X = BigInteger.valueOf(x - m);
-                u = g.apply(X);
-                if ((array = trialDivide(u)) != null) {
-                    t = h.apply(X);
-
-                    smooth_relations_u.add(array);
-                    smooth_relations_t.add(t);
-                    relationsFound++;
+        trialDivision(g, h, min_val, 0, sieve_array.length);
+    }
+
+    /**
+     * Performs trial division on only the indices {@code lo <= x < hi} of the sieve array.
+     * @param g polynomial to use to get smooth output
+     * @param h polynomial whose output squared is equivalent to output of {@code g} mod N
+     * @param min_val minimum value in sieve array for trial division to be attempted
+     * @param lo first index of sieve array to be checked
+     * @param hi index after last index of sieve array to be checked
+     */
+    public void trialDivision(QSPoly g, QSPoly h, int min_val, int lo, int hi) {
+        int[] candidates = candidates(min_val, lo, hi);
+        if (candidates.length == 0) return;
+
+        // Batch test doesn't need any roots, so candidates only need to be evaluated
+        if (batch != null) {
+            BigInteger X;
+            for (int j : candidates) {
+                X = BigInteger.valueOf(j - m);
+                batch.add(g.apply(X), h.apply(X));
+            }
+            return;
+        }
+
+        // If resieving, only primes before resieve_index have their roots checked
+        int[][] hits = (resieve_index < factor_base.length) ? resieve(candidates, lo, hi) : null;
+        int limit = (hits == null) ? factor_base.length : resieve_index;
+
+        // Each candidate is evaluated and divided in fixed width integers, only smooth ones allocate
+        TrialDivider.Workspace work = divider.newWorkspace();
+        FixedInt[] coeffs = divider.coefficients(g);
+        long maxCofactor = maxCofactor();
+
+        Relation relation;
+        int x;
+        for (int k = 0; k < candidates.length; k++) {
+            x = candidates[k] - m;
+            relation = divider.trialDivide(work, coeffs, h, x, soln1, soln2, a_factor_indices, limit,
+                    (hits == null) ? null : hits[k], maxCofactor);
+
+            if (relation != null) addRelation(relation, work.getCofactor());
+        }
+    }
+
+    /**
+     * Returns the indices {@code lo <= j < hi} of the sieve array whose value is at least {@code min_val}.
+     * @param min_val minimum value in sieve array for an index to be a candidate
+     * @param lo first index of sieve array to be checked
+     * @param hi index after last index of sieve array to be checked
+     * @return indices of candidates, in ascending order
+     */
+    public int[] candidates(int min_val, int lo, int hi) {
+        return scanner.scan(sieve_array, min_val, lo, hi);
+    }
+
+    /**
+     * Sieves the range {@code lo <= j < hi} again with every prime from {@code resieve_index} on, but instead of
+     * adding logs, records which of those primes hit each candidate. Large primes are taken from the buckets
+     * instead of being sieved again.
+     * @param candidates indices of candidates in sieve array, in ascending order
+     * @param lo first index of sieve array that was checked for candidates
+     * @param hi index after last index of sieve array that was checked for candidates
+     * @return indices in factor base of the primes hitting each candidate
+     */
+    public int[][] resieve(int[] candidates, int lo, int hi) {
+        int[][] hits = new int[candidates.length][];
+        int[] nHits = new int[candidates.length];
+
+        // Bit set of candidates, so that most hits can be rejected without searching candidates
+        long[] isCandidate = new long[((hi - lo) >> 6) + 1];
+        for (int j : candidates) isCandidate[(j - lo) >> 6] |= 1L << (j - lo);
+
+        int prime;
+        for (int i = resieve_index; i < large_prime_index; i++) {
+            prime = factor_base[i];
+            for (int j = lo + Math.floorMod(soln1[i] + m - lo, prime); j < hi; j += prime) {
+                if ((isCandidate[(j - lo) >> 6] & (1L << (j - lo))) != 0) addHit(hits, nHits, candidates, j, i);
+            }
+
+            // Don't record the same root twice, roots of primes dividing 'a' may be equal
+            if (soln1[i] == soln2[i]) continue;
+
+            for (int j = lo + Math.floorMod(soln2[i] + m - lo, prime); j < hi; j += prime) {
+                if ((isCandidate[(j - lo) >> 6] & (1L << (j - lo))) != 0) addHit(hits, nHits, candidates, j, i);
+            }
+        }
+
+        int start, j, i;
+        for (int block = lo / blockSize; block * blockSize < hi; block++) {
+            start = block * blockSize;
+            for (int k = 0; k < bucket_sizes[block]; k++) {
+                j = start + (int) buckets[block][k];
+                i = (int) (buckets[block][k] >>> 40);
+                if ((j >= lo) && (j < hi) && (i >= resieve_index)
+                        && ((isCandidate[(j - lo) >> 6] & (1L << (j - lo))) != 0)) {
+                    addHit(hits, nHits, candidates, j, i);
                 }
             }
         }
+
+        for (int k = 0; k < candidates.length; k++) {
+            hits[k] = (hits[k] == null) ? new int[0] : Arrays.copyOf(hits[k], nHits[k]);
+        }
+        return hits;
     }
 
-    public void constructMatrix() {
-        smooth_matrix = new int[smooth_relations_u.size()][primesLTF.length];
-        polynomialInput = new BigInteger[smooth_relations_t.size()];
+    /**
+     * Records that the prime at index {@code i} in the factor base hits the candidate at index {@code j}
+     * of the sieve array.
+     */
+    private static void addHit(int[][] hits, int[] nHits, int[] candidates, int j, int i) {
+        int k = Arrays.binarySearch(candidates, j);
+        if (hits[k] == null) {
+            hits[k] = new int[4];
+        } else if (nHits[k] == hits[k].length) {
+            hits[k] = Arrays.copyOf(hits[k], nHits[k] << 1);
+        }
+        hits[k][nHits[k]++] = i;
+    }
+
+    /**
+     * Adds a smooth relation to the relations of this sieve, which are shared with every other sieve
+     * created from the same instance, so can be called from any thread.
+     * @param relation relation whose g(x) is completely factored over the primes < F
+     * @return true if relation was added, false if it had already been found
+     */
+    public boolean addRelation(Relation relation) {
+        if (!relations.add(relation)) return false;
+        if (incremental != null) incremental.add(relation);
+        return true;
+    }
+
+    /**
+     * Adds a relation whose g(x) is smooth except for {@code cofactor}, either to the relations if it is
+     * smooth, or to the partial relations if not.
+     * @param relation relation holding the primes < F of g(x) / cofactor
+     * @param cofactor part of g(x) not in the factor base, which is 1 or made of large primes
+     */
+    public void addRelation(Relation relation, long cofactor) {
+        if (cofactor == 1) {
+            addRelation(relation);
+        } else if (partials != null) {
+            partials.add(relation, cofactor);
+        }
+    }
+
+    public int getDuplicateRelations() {
+        return relations.duplicates();
+    }
+
+    /**
+     * Returns the number of columns of the matrix mod 2, which has a column for each prime < F and a last
+     * column for -1.
+     * @return number of columns of matrix
+     */
+    public int matrixColumns() {
+        return primesLTF.length + 1;
+    }
 
-        assert smooth_matrix.length == polynomialInput.length;
+    /**
+     * Constructs the matrix from the relations currently found, in a single pass over the primes of each
+     * relation. Other threads may continue to add relations while this is called.
+     */
+    public void constructMatrix() {
+        smooth_relations = relations.snapshot().toArray(new Relation[0]);
+        smooth_matrix = new int[smooth_relations.length][];
+        polynomialInput = new BigInteger[smooth_relations.length];
 
-        for (int i = 0; i < smooth_matrix.length; i++) {
-            smooth_matrix[i] = smooth_relations_u.get(i);
-            polynomialInput[i] = smooth_relations_t.get(i);
+        for (int i = 0; i < smooth_relations.length; i++) {
+            smooth_matrix[i] = smooth_relations[i].columns(primesLTF.length);
+            polynomialInput[i] = smooth_relations[i].t();
         }
     }
 
@@ -0,0 +1,82 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Smooth relation found by trial division, where {@code t^2 = g(x) mod N}. The factorization of g(x) is kept
+ * sparse: {@code primes} holds the indices of the primes < F dividing g(x) in ascending order, {@code powers}
+ * the power of each, and {@code negative} the sign of g(x), so that a relation takes space proportional to the
+ * number of primes dividing it instead of the number of primes < F.
+ */
+public record Relation(int[] primes, int[] powers, boolean negative, BigInteger t) {
+
+    /**
+     * Creates a relation from the primes < F dividing g(x), without ever holding the power of every prime < F.
+     * @param found indices of the primes < F dividing g(x) in ascending order, each repeated once for every
+     *              time it divides g(x)
+     * @param n number of indices in {@code found}
+     * @param t h(x), whose square is equivalent to g(x) mod N
+     * @param negative true if g(x) is negative
+     * @return relation holding only the primes dividing g(x)
+     */
+    public static Relation of(int[] found, int n, BigInteger t, boolean negative) {
+        int distinct = 0;
+        for (int k = 0; k < n; k++) {
+            if ((k == 0) || (found[k] != found[k - 1])) distinct++;
+        }
+
+        int[] primes = new int[distinct];
+        int[] powers = new int[distinct];
+        distinct = 0;
+        for (int k = 0; k < n; k++) {
+            if ((k == 0) || (found[k] != found[k - 1])) primes[distinct++] = found[k];
+            powers[distinct - 1]++;
+        }
+        return new Relation(primes, powers, negative, t);
+    }
+
+    /**
+     * Returns the columns of this relation in the matrix mod 2, which are the indices of the primes with an odd
+     * power, followed by {@code signColumn} if g(x) is negative.
+     * @param signColumn column of -1, after every prime < F
+     * @return columns with a 1 in this relation, in ascending order
+     */
+    public int[] columns(int signColumn) {
+        int n = 0;
+        int[] columns = new int[primes.length + 1];
+        for (int k = 0; k < primes.length; k++) {
+            if ((powers[k] & 1) != 0) columns[n++] = primes[k];
+        }
+        if (negative) columns[n++] = signColumn;
+        return Arrays.copyOf(columns, n);
+    }
+
+    /**
+     * Returns the relation whose g(x) is the product of the g(x) of this relation and {@code r}, with
+     * {@code t} as its h(x).
+     * @param r relation to multiply by
+     * @param t h(x) of the product
+     * @return product of relations
+     */
+    public Relation multiply(Relation r, BigInteger t) {
+        int[] primes = new int[this.primes.length + r.primes.length];
+        int[] powers = new int[primes.length];
+
+        // Both lists of primes are sorted, so they are merged in a single pass
+        int n = 0, i = 0, j = 0;
+        while ((i < this.primes.length) || (j < r.primes.length)) {
+            if ((j == r.primes.length) || ((i < this.primes.length) && (this.primes[i] < r.primes[j]))) {
+                primes[n] = this.primes[i];
+                powers[n++] = this.powers[i++];
+            } else if ((i == this.primes.length) || (r.primes[j] < this.primes[i])) {
+                primes[n] = r.primes[j];
+                powers[n++] = r.powers[j++];
+            } else {
+                primes[n] = this.primes[i];
+                powers[n++] = this.powers[i++] + r.powers[j++];
+            }
+        }
+        return new Relation(Arrays.copyOf(primes, n), Arrays.copyOf(powers, n), negative != r.negative, t);
+    }
+}
@@ -0,0 +1,297 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.function.IntFunction;
+
+/**
+ * Shrinks the matrix of relations before linear algebra, keeping track of which of the original relations
+ * make up each relation of the smaller matrix so that dependencies found in it can be mapped back.
+ *
+ * <p>Relations are only ever looked at mod 2, as the set of primes with an odd power in them. A prime with
+ * an odd power in only one relation (a singleton) can never be part of a dependency, so that relation is
+ * removed, which can make new singletons, until there are none left. Primes that are in no relation are
+ * dropped as columns, which removes every prime that is not a quadratic residue mod N. Duplicates are
+ * relations with the same h(x) up to sign, which can only give a trivial dependency.</p>
+ *
+ * <p>Optionally, cliques are removed and relations merged. A clique is a set of relations connected through
+ * primes that are in exactly two relations, and removing one lowers the excess of relations over primes
+ * by at most one, since all but one of those primes disappear with it. Once there is no more excess than
+ * needed, the two relations sharing each prime that is in only two relations are merged into one, removing
+ * both a relation and a prime, as long as the merged relation is not too heavy.</p>
+ */
+public class RelationFilter {
+
+    // Columns of each relation in the matrix mod 2, as sorted indices, or null if removed
+    private final int[][] primes;
+
+    // Original relations making up each relation
+    private final int[][] sets;
+
+    private final int nPrimes;
+    private int nRelations;
+
+    /**
+     * Creates a filter over {@code relations}, each the columns of a relation in the matrix mod 2.
+     * @param relations sorted columns with a 1 in each relation, each less than {@code nColumns}
+     * @param nColumns number of columns of the matrix, the primes < F and -1
+     */
+    public RelationFilter(int[][] relations, int nColumns) {
+        nPrimes = nColumns;
+        nRelations = relations.length;
+        primes = new int[nRelations][];
+        sets = new int[nRelations][];
+
+        for (int i = 0; i < nRelations; i++) {
+            primes[i] = relations[i].clone();
+            sets[i] = new int[]{i};
+        }
+    }
+
+    /**
+     * Returns the number of relations left.
+     * @return number of rows of the filtered matrix
+     */
+    public int nRelations() {
+        return nRelations;
+    }
+
+    /**
+     * Returns the number of primes with an odd power in at least one relation left.
+     * @return number of columns of the filtered matrix
+     */
+    public int nPrimes() {
+        int n = 0;
+        for (int c : counts()) {
+            if (c > 0) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of relations more than primes.
+     * @return excess of rows over columns
+     */
+    public int excess() {
+        return nRelations - nPrimes();
+    }
+
+    /**
+     * Removes every relation with the same h(x) as one before it, up to sign.
+     * @param t h(x) of each original relation
+     */
+    public void removeDuplicates(BigInteger[] t) {
+        HashSet<BigInteger> seen = new HashSet<>();
+        for (int i = 0; i < primes.length; i++) {
+            if ((primes[i] != null) && (sets[i].length == 1) && !seen.add(t[sets[i][0]].abs())) remove(i);
+        }
+    }
+
+    /**
+     * Removes every relation with a prime that no other relation has, until there are none left.
+     */
+    public void removeSingletons() {
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            int[] count = counts();
+            for (int i = 0; i < primes.length; i++) {
+                if (primes[i] == null) continue;
+                for (int p : primes[i]) {
+                    if (count[p] == 1) {
+                        for (int q : primes[i]) count[q]--;
+                        remove(i);
+                        removed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the largest cliques, and the singletons their removal makes, until there are at most
+     * {@code excess} more relations than primes, or no cliques are left.
+     * @param excess number of relations more than primes to keep
+     */
+    public void removeCliques(int excess) {
+        removeSingletons();
+        int over;
+        while ((over = excess() - excess) > 0) {
+            int[] count = counts();
+
+            // Union-find over relations, joining the two relations of each prime in exactly two
+            int[] parent = new int[primes.length];
+            int[] first = new int[nPrimes];
+            Arrays.fill(first, -1);
+            for (int i = 0; i < primes.length; i++) {
+                parent[i] = i;
+                if (primes[i] == null) continue;
+                for (int p : primes[i]) {
+                    if (count[p] != 2) continue;
+                    if (first[p] < 0) {
+                        first[p] = i;
+                    } else {
+                        parent[find(parent, i)] = find(parent, first[p]);
+                    }
+                }
+            }
+
+            int[] size = new int[primes.length];
+            ArrayList<Integer> roots = new ArrayList<>();
+            for (int i = 0; i < primes.length; i++) {
+                if (primes[i] == null) continue;
+                int root = find(parent, i);
+                if (size[root]++ == 0) roots.add(root);
+            }
+            if (roots.isEmpty()) return;
+            roots.sort((a, b) -> Integer.compare(size[b], size[a]));
+
+            // Each clique removed lowers the excess by at most one
+            HashSet<Integer> cliques = new HashSet<>(roots.subList(0, Math.min(over, roots.size())));
+            for (int i = 0; i < primes.length; i++) {
+                if ((primes[i] != null) && cliques.contains(find(parent, i))) remove(i);
+            }
+            removeSingletons();
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Merges the two relations of each prime in exactly two relations into one, as long as the merged
+     * relation has at most {@code maxWeight} odd primes, until no more can be merged.
+     * @param maxWeight largest number of odd primes of a merged relation
+     */
+    public void merge(int maxWeight) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            int[] count = counts();
+
+            // Relations of each prime in two, where the second is only found once the first is
+            int[] first = new int[nPrimes], second = new int[nPrimes];
+            Arrays.fill(first, -1);
+            for (int i = 0; i < primes.length; i++) {
+                if (primes[i] == null) continue;
+                for (int p : primes[i]) {
+                    if (count[p] != 2) continue;
+                    if (first[p] < 0) {
+                        first[p] = i;
+                    } else {
+                        second[p] = i;
+                    }
+                }
+            }
+
+            // Each relation is merged at most once per pass, so the relations found above stay correct
+            boolean[] touched = new boolean[primes.length];
+            for (int p = 0; p < nPrimes; p++) {
+                if (first[p] < 0) continue;
+                int a = first[p], b = second[p];
+                if (touched[a] || touched[b]) continue;
+
+                int[] sum = symmetricDifference(primes[a], primes[b]);
+                if (sum.length > maxWeight) continue;
+
+                int[] set = Arrays.copyOf(sets[a], sets[a].length + sets[b].length);
+                System.arraycopy(sets[b], 0, set, sets[a].length, sets[b].length);
+                primes[b] = sum;
+                sets[b] = set;
+                remove(a);
+                touched[a] = touched[b] = true;
+                merged = true;
+            }
+        }
+    }
+
+    private static int[] symmetricDifference(int[] a, int[] b) {
+        int[] c = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while ((i < a.length) && (j < b.length)) {
+            if (a[i] < b[j]) {
+                c[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                c[n++] = b[j++];
+            } else {
+                i++;
+                j++;
+            }
+        }
+        while (i < a.length) c[n++] = a[i++];
+        while (j < b.length) c[n++] = b[j++];
+        return Arrays.copyOf(c, n);
+    }
+
+    private void remove(int i) {
+        primes[i] = null;
+        sets[i] = null;
+        nRelations--;
+    }
+
+    private int[] counts() {
+        int[] count = new int[nPrimes];
+        for (int[] p : primes) {
+            if (p == null) continue;
+            for (int j : p) count[j]++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the original relations making up each relation left.
+     * @return array of the indices of original relations, for each row of the filtered matrix
+     */
+    public int[][] getSets() {
+        int[][] result = new int[nRelations][];
+        int k = 0;
+        for (int[] set : sets) {
+            if (set != null) result[k++] = set;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the odd primes of each relation left, numbering only the primes that are in some relation.
+     * @return sorted column indices of the filtered matrix, for each of its rows
+     */
+    public int[][] getColumns() {
+        IntFunction<int[]> columns = columns();
+        int[][] result = new int[nRelations][];
+        for (int k = 0; k < nRelations; k++) result[k] = columns.apply(k);
+        return result;
+    }
+
+    /**
+     * Returns the odd primes of each relation left the same as {@link #getColumns()}, but computing each row
+     * only when it is asked for, so that the filtered matrix can be written out without all of it in memory.
+     * @return function from each row of the filtered matrix to its sorted column indices
+     */
+    public IntFunction<int[]> columns() {
+        int[] count = counts();
+        int[] column = new int[nPrimes];
+        int nColumns = 0;
+        for (int j = 0; j < nPrimes; j++) column[j] = (count[j] > 0) ? nColumns++ : -1;
+
+        int[] left = new int[nRelations];
+        int k = 0;
+        for (int i = 0; i < primes.length; i++) {
+            if (primes[i] != null) left[k++] = i;
+        }
+
+        return row -> {
+            int[] p = primes[left[row]];
+            int[] result = new int[p.length];
+            for (int j = 0; j < p.length; j++) result[j] = column[p[j]];
+            return result;
+        };
+    }
+}
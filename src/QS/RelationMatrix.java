@@ -0,0 +1,41 @@
+package QS;
+
+/**
+ * Matrix over GF(2) whose columns are relations and whose rows are primes, as used by Block Lanczos,
+ * which only ever multiplies blocks of 64 vectors by it and by its transpose.
+ *
+ * <p>Blocks are {@code long[]}, whose bit k of entry i is entry i of vector k. Products are computed over a
+ * range of columns, so that separate ranges can be multiplied on separate threads, and so that an
+ * implementation can stream through its columns in order.</p>
+ */
+public interface RelationMatrix {
+
+    int nRows();
+
+    int nCols();
+
+    /**
+     * Returns the number of non-zero entries in this matrix.
+     * @return number of odd powers over every relation
+     */
+    long weight();
+
+    /**
+     * Adds the product of columns {@code lo} to {@code hi} of this matrix and the same entries of {@code x}
+     * to {@code y}, so that summing over every range of columns gives {@code y = Mx}.
+     * @param x block of {@code nCols()} entries
+     * @param y block of {@code nRows()} entries added to
+     * @param lo first column
+     * @param hi column after last column
+     */
+    void multiply(long[] x, long[] y, int lo, int hi);
+
+    /**
+     * Sets entries {@code lo} to {@code hi} of {@code z} to the same entries of {@code M^T y}.
+     * @param y block of {@code nRows()} entries
+     * @param z block of {@code nCols()} entries written to
+     * @param lo first column
+     * @param hi column after last column
+     */
+    void multiplyTranspose(long[] y, long[] z, int lo, int hi);
+}
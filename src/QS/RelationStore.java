@@ -0,0 +1,99 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Store of smooth relations that any number of threads can add to at once.
+ *
+ * <p>Relations are split across shards by the thread adding them, with each shard being a lock-free
+ * queue, so that threads adding at the same time rarely touch the same queue. Before a relation is added,
+ * it is checked against the h(x) values of every relation already added, so that the same relation
+ * (which happens when a coefficient 'a' is chosen more than once) is only stored once. The number of
+ * relations is kept in a striped counter, so that checking if there are enough relations is cheap
+ * even while every thread is adding to it.</p>
+ */
+public class RelationStore {
+
+    private final ConcurrentLinkedQueue<Relation>[] shards;
+    private final Set<BigInteger> seen;
+    private final LongAdder count;
+    private final LongAdder duplicates;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RelationStore(int nShards) {
+        if (nShards < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive: " + nShards);
+        }
+        shards = new ConcurrentLinkedQueue[nShards];
+        for (int i = 0; i < nShards; i++) {
+            shards[i] = new ConcurrentLinkedQueue<>();
+        }
+        seen = ConcurrentHashMap.newKeySet();
+        count = new LongAdder();
+        duplicates = new LongAdder();
+    }
+
+    /**
+     * Adds {@code relation} to this store if no relation with the same h(x) has been added.
+     * Since h(x) and -h(x) both square to g(x), they are considered the same.
+     * @param relation relation to add
+     * @return true if the relation was added, false if it was a duplicate
+     */
+    public boolean add(Relation relation) {
+        if (!seen.add(relation.t().abs())) {
+            duplicates.increment();
+            return false;
+        }
+
+        shards[(int) (Thread.currentThread().getId() % shards.length)].add(relation);
+        count.increment();
+        return true;
+    }
+
+    /**
+     * Returns the number of relations added to this store.
+     * @return number of relations
+     */
+    public int size() {
+        return count.intValue();
+    }
+
+    /**
+     * Returns the number of relations that were not added because they were duplicates.
+     * @return number of duplicates
+     */
+    public int duplicates() {
+        return duplicates.intValue();
+    }
+
+    /**
+     * Returns a list of the relations currently in this store. Threads can continue adding
+     * relations while this is called, and any relations added during the call may or may not be
+     * included in the list.
+     * @return relations in this store
+     */
+    public ArrayList<Relation> snapshot() {
+        ArrayList<Relation> relations = new ArrayList<>(size());
+        for (ConcurrentLinkedQueue<Relation> shard : shards) {
+            relations.addAll(shard);
+        }
+        return relations;
+    }
+
+    /**
+     * Removes every relation from this store, including those used for finding duplicates.
+     */
+    public void clear() {
+        for (ConcurrentLinkedQueue<Relation> shard : shards) {
+            shard.clear();
+        }
+        seen.clear();
+        count.reset();
+        duplicates.reset();
+    }
+}
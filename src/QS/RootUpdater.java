@@ -0,0 +1,76 @@
+package QS;
+
+/**
+ * Updates the roots of the current polynomial mod each prime in the factor base when switching to the
+ * next polynomial of a family, adding or subtracting {@code 2 * B_v * a^-1 mod p} from each root mod p.
+ * Every prime is updated independently of every other, so the update is done over whole int arrays at once.
+ *
+ * <p>{@link #getInstance()} returns an updater using the Vector API if the {@code jdk.incubator.vector}
+ * module was added when running, and a scalar updater otherwise.</p>
+ */
+public interface RootUpdater {
+
+    /**
+     * Sets {@code soln[i] = soln[i] + sign * delta[i] mod primes[i]} for each {@code lo <= i < hi}, where
+     * each root and delta is already reduced mod its prime.
+     * @param soln roots mod each prime, in the range [0, p)
+     * @param delta values to add to or subtract from each root, in the range [0, p)
+     * @param primes primes of factor base
+     * @param sign 1 to add {@code delta}, -1 to subtract it
+     * @param lo first index to update
+     * @param hi index after last index to update
+     */
+    void update(int[] soln, int[] delta, int[] primes, int sign, int lo, int hi);
+
+    /**
+     * Returns the fastest updater available, only loading the vector updater if the Vector API can be used.
+     * @return vector updater if available, otherwise scalar updater
+     */
+    static RootUpdater getInstance() {
+        return Holder.instance;
+    }
+
+    /**
+     * Chooses the updater the first time one is needed.
+     */
+    final class Holder {
+
+        private static final RootUpdater instance = choose();
+
+        private Holder() {}
+
+        private static RootUpdater choose() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                try {
+                    return new VectorRootUpdater();
+                } catch (LinkageError e) {
+                    // Module was found but the updater could not be loaded, so fall back to scalar update
+                }
+            }
+            return new ScalarRootUpdater();
+        }
+    }
+
+    /**
+     * Updater of one root at a time, which since both root and delta are in [0, p) only needs a single
+     * conditional add or subtract of p instead of a modulus.
+     */
+    final class ScalarRootUpdater implements RootUpdater {
+
+        @Override
+        public void update(int[] soln, int[] delta, int[] primes, int sign, int lo, int hi) {
+            int r;
+            if (sign > 0) {
+                for (int i = lo; i < hi; i++) {
+                    r = soln[i] + delta[i];
+                    soln[i] = (r >= primes[i]) ? r - primes[i] : r;
+                }
+            } else {
+                for (int i = lo; i < hi; i++) {
+                    r = soln[i] - delta[i];
+                    soln[i] = (r < 0) ? r + primes[i] : r;
+                }
+            }
+        }
+    }
+}
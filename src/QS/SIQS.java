@@ -2,12 +2,20 @@ package QS;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
 
 /**
  * Self Initializing Quadratic Sieve
@@ -30,10 +38,29 @@ public class SIQS extends QuadraticSieve {
 
     public static final int trialDivError = 25;
 
+    // Number of times linear algebra is attempted, sieving more relations each time it gives no factor
+    private static final int matrixAttempts = 10;
+
+    // Number of times Block Lanczos is run, each from a new random block, before giving up on a matrix
+    private static final int lanczosRuns = 3;
+
+    // Most relations in a filtered matrix that dense elimination is tried on, which takes h * (w + h) bits
+    private static final int maxDenseRelations = 10000;
+
+    // Updater of roots when switching polynomials, using the Vector API if available
+    private static final RootUpdater updater = RootUpdater.getInstance();
+
     private int[][] B_ainv2;
     private BigInteger[] B;
     private HashSet<Integer> a_factors;
-    private HashSet<Integer> a_non_factors;
+
+    // Indices of primes that do not divide 'a', in ascending order
+    private int[] a_non_factors;
+
+    private FamilyGenerator generator;
+
+    // Product of h(x) mod N of every dependency already tried, kept across attempts at linear algebra
+    private final Set<BigInteger> triedDependencies = ConcurrentHashMap.newKeySet();
 
     public SIQS(BigInteger n, BigInteger[] pr) {
         super(n, pr);
@@ -44,13 +71,34 @@ public class SIQS extends QuadraticSieve {
         // array representing if a given prime from the factor base is a factor of a
         a_factors = null;
         a_non_factors = null;
+        generator = null;
+    }
+
+    /**
+     * Creates a new {@code SIQS} that shares its factor base and relations with {@code qs}, but chooses
+     * its own coefficient 'a' and polynomials, so that both can sieve at the same time on different threads.
+     * @param qs sieve whose startup data and relations are shared
+     */
+    public SIQS(SIQS qs) {
+        super(qs);
+        B_ainv2 = null;
+        B = null;
+        a = b = null;
+
+        a_factors = null;
+        a_non_factors = null;
+        generator = null;
     }
 
     public int nFactorsA() {
         return a_factors.size();
     }
 
-    public void smoothA() {
+    /**
+     * Randomly chooses primes from the factor base whose product is close to the ideal coefficient 'a'.
+     * @return indices in the factor base of the primes chosen
+     */
+    public HashSet<Integer> smoothA() {
         int min = 0;
         // Get first prime in factor base >= minFactor
         while (factor_base[min] < minFactor) {
@@ -91,9 +139,7 @@ public class SIQS extends QuadraticSieve {
         BigInteger A;
         BigDecimal ratio;
 
-        // Set (or reset) HashSets to empty
-        a_factors = new HashSet<>();
-        a_non_factors = new HashSet<>();
+        HashSet<Integer> a_factors = null;
 
         int comp;
 
@@ -114,7 +160,6 @@ public class SIQS extends QuadraticSieve {
             ratio = new BigDecimal(A).divide(target, ctx);
 
             if (best_ratio == null) {
-                a = A;
                 best_ratio = ratio;
                 a_factors = tmp_factors;
             } else {
@@ -126,27 +171,39 @@ public class SIQS extends QuadraticSieve {
                 comp = ratio.compareTo(best_ratio);
                 if (((comp < 0) && (ratio.compareTo(opt_ratio) >= 0))
                         || ((best_ratio.compareTo(opt_ratio) < 0) && (comp > 0))) {
-                    a = A;
                     best_ratio = ratio;
                     a_factors = tmp_factors;
                 }
             }
         }
 
-        // Create set of indices of primes that do NOT divide a (for convenience when sieving)
-        for (int p = 0; p < factor_base.length; p++) {
-            if (!a_factors.contains(p)) a_non_factors.add(p);
-        }
+        return a_factors;
     }
 
-    public QSPoly[] firstPoly() {
+    /**
+     * Chooses a new coefficient 'a' and computes everything needed to generate each of its polynomials.
+     * This does not change the current polynomial of this sieve, so it can be run on any thread.
+     * @return family of polynomials for the new coefficient 'a'
+     */
+    public PolyFamily newFamily() {
 
         // This is following the initialization algorithm detailed on p. 14 on Contini's thesis
 
         // Get coefficient a that is smooth with respect to the factor base
-        smoothA();
+        HashSet<Integer> a_factors = smoothA();
+
+        // Create array of indices of primes that do NOT divide a (for convenience when sieving)
+        int[] a_non_factors = new int[factor_base.length - a_factors.size()];
+        int k = 0;
+        for (int p = 0; p < factor_base.length; p++) {
+            if (!a_factors.contains(p)) a_non_factors[k++] = p;
+        }
+
+        // Everything here is local, so that the current polynomial of this sieve is untouched
+        BigInteger a = BigInteger.ONE;
+        for (int l : a_factors) a = a.multiply(FactorBase[l]);
 
-        B = new BigInteger[a_factors.size()];
+        BigInteger[] B = new BigInteger[a_factors.size()];
 
         int b_index = 0;
         BigInteger a_l;     // a missing one of it's factors
@@ -179,7 +236,7 @@ public class SIQS extends QuadraticSieve {
             B[b_index++] = a_l.multiply(gamma);
         }
 
-        b = BigInteger.ZERO;
+        BigInteger b = BigInteger.ZERO;
         for (BigInteger B_i : B) b = b.add(B_i);
         b = b.mod(a);
 
@@ -194,7 +251,9 @@ public class SIQS extends QuadraticSieve {
 
         BigInteger b2_n = _b.multiply(_b).subtract(N);
 
-        B_ainv2 = new int[a_factors.size()][factor_base.length];
+        int[][] B_ainv2 = new int[a_factors.size()][factor_base.length];
+        int[] soln1 = new int[factor_base.length];
+        int[] soln2 = new int[factor_base.length];
         BigInteger a_inv, prime, t;
         for (int p : a_non_factors) {
             prime = FactorBase[p];
@@ -219,10 +278,57 @@ public class SIQS extends QuadraticSieve {
         QSPoly g = new QSPoly(new BigInteger[]{a.multiply(a), a.multiply(_b).multiply(BigInteger.TWO), b2_n});
         QSPoly h = new QSPoly(new BigInteger[]{a, _b});
 
-        return new QSPoly[]{g, h};
+        return new PolyFamily(a, b, B, B_ainv2, a_factors, a_non_factors, soln1, soln2, g, h);
+    }
 
+    /**
+     * Sets the generator that {@code firstPoly()} takes each new family of polynomials from. If
+     * {@code generator} is null, each new family is computed by this sieve when it is needed.
+     * @param generator generator computing families ahead of time
+     */
+    public void setFamilyGenerator(FamilyGenerator generator) {
+        this.generator = generator;
     }
 
+    /**
+     * Chooses a new coefficient 'a' and switches to its first polynomial.
+     * @return polynomials g and h, where g(x) = h(x)^2 - N
+     */
+    public QSPoly[] firstPoly() {
+        return firstPoly(nextFamily());
+    }
+
+    /**
+     * Returns a new family of polynomials, taken from the generator if there is one.
+     * @return family for a new coefficient 'a'
+     */
+    private PolyFamily nextFamily() {
+        return (generator == null) ? newFamily() : generator.next();
+    }
+
+    /**
+     * Switches to the first polynomial of {@code family}. Since the roots of {@code family} become the
+     * roots of this sieve, and are changed with each new polynomial, {@code family} should not be given
+     * to any other sieve.
+     * @param family family of polynomials for coefficient 'a'
+     * @return polynomials g and h, where g(x) = h(x)^2 - N
+     */
+    public QSPoly[] firstPoly(PolyFamily family) {
+        a = family.a();
+        b = family.b();
+        B = family.B();
+        B_ainv2 = family.B_ainv2();
+        a_factors = family.a_factors();
+        a_non_factors = family.a_non_factors();
+        a_factor_indices = family.a_factors().stream().mapToInt(Integer::intValue).sorted().toArray();
+        soln1 = family.soln1();
+        soln2 = family.soln2();
+        fillBuckets();
+
+        return new QSPoly[]{family.g(), family.h()};
+    }
+
+
     public QSPoly[] nextPoly(int i) {
         /*
         v is the highest power of 2 that divides 2*i
@@ -258,95 +364,290 @@ public class SIQS extends QuadraticSieve {
         QSPoly g = new QSPoly(new BigInteger[]{a.multiply(a), a.multiply(_b).multiply(BigInteger.TWO), b2_n});
         QSPoly h = new QSPoly(new BigInteger[]{a, _b});
 
-        // For all prime p : factor base where p does not divide a
-        for (int p : a_non_factors) {
-            // solnj[p] = solnj[p] + (-1 ^ (i / 2^v)) * B_ainv2[v][p] mod p
-            soln1[p] = Math.floorMod((soln1[p] + sign * B_ainv2[v - 1][p]), factor_base[p]);
-            soln2[p] = Math.floorMod((soln2[p] + sign * B_ainv2[v - 1][p]), factor_base[p]);
-        }
+        /*
+        solnj[p] = solnj[p] + (-1 ^ (i / 2^v)) * B_ainv2[v][p] mod p for all prime p : factor base. This is
+        done over the whole factor base so that it runs over contiguous arrays, which is safe since B_ainv2 is 0
+        for every p that divides a, leaving the roots of those primes unchanged
+         */
+        updater.update(soln1, B_ainv2[v - 1], factor_base, sign, 0, factor_base.length);
+        updater.update(soln2, B_ainv2[v - 1], factor_base, sign, 0, factor_base.length);
+        fillBuckets();
 
         return new QSPoly[]{g, h};
     }
 
-    @Override
-    public void sieve() {
-        Arrays.fill(sieve_array, 0);
-        for (int p : a_non_factors) sieveIndex(p);
+    /**
+     * Sieves over every polynomial for a coefficient 'a', choosing a new 'a' each time all of its
+     * polynomials have been used, until enough relations have been found (by this sieve or by any
+     * other sieve sharing its relations) or the current thread is interrupted.
+     * @param minTrial minimum value in sieve array for trial division to be attempted
+     */
+    public void findRelations(int minTrial) {
+        findRelations(minTrial, null);
     }
 
-    @Override
-    public BigInteger solveMatrix() {
-        assert (smooth_matrix != null) : "Trial division must be performed before solving!";
+    /**
+     * Finds relations the same as {@code findRelations(minTrial)}, but if {@code pool} is not null,
+     * each polynomial is sieved in segments run in parallel on {@code pool}. If batching, the candidates
+     * left in the last batch are tested once sieving stops.
+     * @param minTrial minimum value in sieve array for trial division to be attempted
+     * @param pool pool to sieve segments of each polynomial on, or null to sieve on current thread
+     */
+    public void findRelations(int minTrial, ForkJoinPool pool) {
+        if (pool == null) {
+            forEachPoly((g, h) -> {
+                sieve();
+                trialDivision(g, h, minTrial);
+            });
+        } else {
+            forEachPoly((g, h) -> sieve(pool, g, h, minTrial));
+        }
+        if (batch != null) batch.flush();
+    }
 
-        int h = smooth_matrix.length;
-        int w = smooth_matrix[0].length;
+    /**
+     * Iterates over every polynomial for a coefficient 'a', choosing a new 'a' each time all of its
+     * polynomials have been used, until enough relations have been found or the current thread is
+     * interrupted. For each polynomial, the roots of this sieve are set before {@code sievePoly} is
+     * given the polynomial. Once done, any family being computed in the background is cancelled.
+     * @param sievePoly function given polynomials g and h, where g(x) = h(x)^2 - N
+     */
+    public void forEachPoly(BiConsumer<QSPoly, QSPoly> sievePoly) {
+        forEachPoly(sievePoly, () -> false);
+    }
 
-        /*
-        Take 2 transposes here, one for using in finding the kernel mod 2 and the other
-        for repeated use in matrix multiplication, instead of re-transposing smooth_matrix
-        everytime matMul() is called
-         */
-        int[][] mod2 = new int[w][h];
-        int[][] T = new int[w][h];
-        for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                mod2[i][j] = Math.floorMod(smooth_matrix[j][i], 2);
-                T[i][j] = smooth_matrix[j][i];
+    /**
+     * Iterates over polynomials the same as {@code forEachPoly(sievePoly)}, but also stops as soon as
+     * {@code stop} is true.
+     * @param sievePoly function given polynomials g and h, where g(x) = h(x)^2 - N
+     * @param stop checked before each polynomial, true once no more polynomials should be sieved
+     */
+    public void forEachPoly(BiConsumer<QSPoly, QSPoly> sievePoly, BooleanSupplier stop) {
+        PolyFamily family = nextFamily();
+        QSPoly[] Q_x = firstPoly(family);
+        QSPoly g = Q_x[0];
+        QSPoly h = Q_x[1];
+        int nPolynomials = family.nPolynomials();
+
+        for (int i = 1; !enoughRelations() && !stop.getAsBoolean() && !Thread.currentThread().isInterrupted(); i++) {
+            sievePoly.accept(g, h);
+            Q_x = nextPoly(i);
+            g = Q_x[0];
+            h = Q_x[1];
+
+            if (i >= nPolynomials) {
+                family = nextFamily();
+                Q_x = firstPoly(family);
+                nPolynomials = family.nPolynomials();
+                g = Q_x[0];
+                h = Q_x[1];
+                i = 0;
             }
         }
 
-        // Kernel of smooth_matrix mod 2, each vector corresponds to the set of
-        // g(x) outputs that produce a perfect square
-        int[][] kernel = Utils.binaryKernel(mod2);
+        if (generator != null) generator.cancel();
+    }
 
-        int[] powers;
-        BigInteger g_x, acc, p, q;
-        for (int[] array : kernel) {
-            powers = Utils.matMul(array, T);
+    /**
+     * Fills the bucket of each block with the hits of every large prime for the current roots.
+     */
+    private void fillBuckets() {
+        clearBuckets();
+        for (int p : a_non_factors) {
+            if (p >= large_prime_index) bucketIndex(p);
+        }
+    }
 
-            acc = BigInteger.ONE;
-            for (int i = 0; i < h; i++) {
+    @Override
+    protected void sieveBlock(int lo, int hi) {
+        Arrays.fill(sieve_array, lo, hi, (byte) 0);
+        for (int p : a_non_factors) {
+            if ((p >= small_prime_index) && (p < large_prime_index)) sieveIndex(p, lo, hi);
+        }
+        applyBucket(lo, hi);
+    }
 
-                // Array[i] is either 1 or 0, so either add or don't, no need to multiply
-                if (array[i] == 1) acc = acc.multiply(polynomialInput[i]);
-            }
+    @Override
+    public void clearRelations() {
+        super.clearRelations();
+        triedDependencies.clear();
+    }
 
-            // Taking the 'square root' of the output
-            for (int i = 0; i < w; i++) powers[i] /= 2;
+    /**
+     * Filters the matrix and finds dependencies in it, taking the square root of each until one gives a
+     * non-trivial factor. Matrices large enough for Block Lanczos are released while solving, so
+     * {@code constructMatrix()} must be called again before solving again.
+     * @return non-trivial factor of N, or null if no dependency gave one
+     */
+    @Override
+    public BigInteger solveMatrix() {
+        assert (smooth_matrix != null) : "Trial division must be performed before solving!";
 
-            g_x = evalPower(powers);
+        // Shrink the matrix first, each of its rows being a set of the original relations
+        RelationFilter filter = new RelationFilter(smooth_matrix, matrixColumns());
+        filter.removeDuplicates(polynomialInput);
+        filter.removeSingletons();
+        if (filterExcess > 0) {
+            filter.removeCliques(filterExcess);
+            filter.merge(maxMergeWeight);
+        }
+        int[][] sets = filter.getSets();
+        int h = sets.length;
+        int w = filter.nPrimes();
+        if (loud) {
+            System.out.printf("Filtered matrix from %d x %d to %d x %d\n",
+                    smooth_matrix.length, matrixColumns(), h, w);
+        }
+        if (h == 0) return null;
+
+        SquareRoot root = new SquareRoot(this, smooth_relations, triedDependencies);
+        BigInteger factor;
+        if (h >= lanczosBound) {
+            RelationMatrix B = null;
+            Path file = null;
+            if (matrixDirectory != null) {
+                try {
+                    file = Files.createTempFile(Path.of(matrixDirectory), "matrix", ".bin");
+
+                    // Windows cannot delete a file while it is mapped, so it may only be deleted on exit
+                    file.toFile().deleteOnExit();
+
+                    // Rows are written straight from the filter, without the whole filtered matrix in heap
+                    B = MappedMatrix.write(file, h, w, filter.columns());
+                } catch (IOException e) {
+                    System.err.println("Unable to map matrix, keeping it in memory: " + e.getMessage());
+                }
+            }
+            if (B == null) B = SparseMatrix.fromIndices(filter.getColumns(), w);
 
             /*
-            When performing trial division, g(x) is considered smooth regardless of if it is reduced to
-            -1 or 1 after division by the factor base, but when the powers of the factor base are
-            re-applied the result is always positive, so check both +g(x) and -g(x) for non-trivial factor
+            Only the relations themselves are needed to take square roots, so everything else built from them
+            is released before Block Lanczos runs, which is what keeps a mapped matrix out of heap. The filter
+            is kept if dense elimination may still be needed, which is only for small matrices
              */
-            p = acc.subtract(g_x).gcd(N);
-            q = acc.add(g_x).gcd(N);
-
-            // If non-trivial ({1, N} are trivial), return
-            if ((p.compareTo(N) < 0) && (p.compareTo(BigInteger.ONE) > 0)) {
-                return p;
-            } else if ((q.compareTo(N) < 0) && (q.compareTo(BigInteger.ONE) > 0)) {
-                return q;
+            smooth_matrix = null;
+            polynomialInput = null;
+            if (h > maxDenseRelations) filter = null;
+
+            // Each run starts from a different random block, so finds different dependencies
+            Random random = new Random();
+            factor = null;
+            for (int run = 0; (run < lanczosRuns) && (factor == null); run++) {
+                BlockLanczos lanczos = new BlockLanczos(B, matrixThreads, random);
+                long[] deps = lanczos.solve();
+                if (loud) {
+                    System.out.printf("Block Lanczos on %d x %d matrix of weight %d: %d iterations\n",
+                            B.nRows(), B.nCols(), B.weight(), lanczos.getIterations());
+                }
+
+                // Bit k of each entry is set if that row is in dependency k
+                if (deps != null) {
+                    ArrayList<int[]> dependencies = new ArrayList<>(64);
+                    for (int k = 0; k < 64; k++) {
+                        int bit = k;
+                        int[] rows = relations(sets, i -> ((deps[i] >>> bit) & 1) != 0);
+                        if (rows.length > 0) dependencies.add(rows);
+                    }
+                    factor = root.factor(dependencies, matrixThreads);
+                }
+                if ((factor == null) && loud) System.out.println("Block Lanczos found no factor");
+            }
+
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // Still mapped, so left to be deleted on exit
+                }
             }
+            if (factor != null) return factor;
+
+            // Dense elimination on a matrix this size would take more memory than Block Lanczos was used to save
+            if (h > maxDenseRelations) return null;
+            if (loud) System.out.println("Falling back to dense elimination");
+        }
+
+        // Kernel of the filtered matrix mod 2, each vector corresponds to the set of
+        // g(x) outputs that produce a perfect square
+        BinaryMatrix kernel = BinaryMatrix.fromIndices(filter.getColumns(), w).leftKernel(matrixThreads);
+        ArrayList<int[]> dependencies = new ArrayList<>(kernel.nRows());
+        for (int k = 0; k < kernel.nRows(); k++) {
+            int row = k;
+            dependencies.add(relations(sets, i -> kernel.get(row, i)));
+        }
+        return root.factor(dependencies, matrixThreads);
+    }
+
+    /**
+     * Returns the original relations of every row of the filtered matrix in a dependency.
+     * @param sets original relations making up each row
+     * @param inDependency true for each row in the dependency
+     * @return indices of original relations
+     */
+    private static int[] relations(int[][] sets, IntPredicate inDependency) {
+        int n = 0;
+        for (int i = 0; i < sets.length; i++) {
+            if (inDependency.test(i)) n += sets[i].length;
         }
 
-        return null;
+        int[] rows = new int[n];
+        n = 0;
+        for (int i = 0; i < sets.length; i++) {
+            if (inDependency.test(i)) {
+                System.arraycopy(sets[i], 0, rows, n, sets[i].length);
+                n += sets[i].length;
+            }
+        }
+        return rows;
     }
 
     public static void main(String[] args) {
         BigInteger N = null;
         String fName = null;
+        int nThreads = 0;
+        int nSegmentThreads = 0;
+        int nTrialThreads = 0;
 
         if (args.length == 0) {
             System.err.println("An integer argument must be provided");
             System.exit(1);
         } else {
 
-            for (String s : args) {
+            String s;
+            for (int k = 0; k < args.length; k++) {
+                s = args[k];
                 if (s.equals("-s")) {
                     QuadraticSieve.loud = false;
+                } else if (s.equals("-t") && (k + 1 < args.length)) {
+                    nThreads = Integer.parseInt(args[++k]);
+                } else if (s.equals("-f") && (k + 1 < args.length)) {
+                    nSegmentThreads = Integer.parseInt(args[++k]);
+                } else if (s.equals("-p") && (k + 1 < args.length)) {
+                    nTrialThreads = Integer.parseInt(args[++k]);
+                } else if (s.equals("-b") && (k + 1 < args.length)) {
+                    QuadraticSieve.blockSize = Integer.parseInt(args[++k]);
+                } else if (s.equals("-sp") && (k + 1 < args.length)) {
+                    QuadraticSieve.smallPrimeBound = Integer.parseInt(args[++k]);
+                } else if (s.equals("-r") && (k + 1 < args.length)) {
+                    QuadraticSieve.resieveBound = Integer.parseInt(args[++k]);
+                } else if (s.equals("-batch") && (k + 1 < args.length)) {
+                    QuadraticSieve.batchSize = Integer.parseInt(args[++k]);
+                } else if (s.equals("-lp") && (k + 1 < args.length)) {
+                    QuadraticSieve.largePrimeMultiplier = Integer.parseInt(args[++k]);
+                } else if (s.equals("-dlp")) {
+                    QuadraticSieve.doubleLargePrimes = true;
+                } else if (s.equals("-la") && (k + 1 < args.length)) {
+                    QuadraticSieve.matrixThreads = Integer.parseInt(args[++k]);
+                } else if (s.equals("-bl") && (k + 1 < args.length)) {
+                    QuadraticSieve.lanczosBound = Integer.parseInt(args[++k]);
+                } else if (s.equals("-merge") && (k + 1 < args.length)) {
+                    QuadraticSieve.filterExcess = Integer.parseInt(args[++k]);
+                } else if (s.equals("-mmap") && (k + 1 < args.length)) {
+                    QuadraticSieve.matrixDirectory = args[++k];
+                } else if (s.equals("-extra") && (k + 1 < args.length)) {
+                    QuadraticSieve.extraRelations = Integer.parseInt(args[++k]);
+                } else if (s.equals("-online")) {
+                    QuadraticSieve.onlineSolver = true;
                 } else if (s.matches("[0-9]+")) {
                     N = new BigInteger(s);
                 } else {
@@ -354,6 +655,13 @@ public class SIQS extends QuadraticSieve {
                 }
             }
 
+            // If sieving segments in parallel, by default only sieve one polynomial at a time
+            if (nThreads == 0 && nSegmentThreads > 0) {
+                nThreads = 1;
+            } else if (nThreads == 0) {
+                nThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - nTrialThreads);
+            }
+
             if (N == null) {
                 System.err.println("An integer argument must be provided");
                 System.exit(1);
@@ -385,48 +693,58 @@ public class SIQS extends QuadraticSieve {
             // Make new object which just creates arrays for process
             SIQS qs = new SIQS(N, primes);
 
-            // Initialize a and get first polynomial
-            QSPoly[] Q_x = qs.firstPoly();
-            QSPoly g = Q_x[0];
-            QSPoly h = Q_x[1];
-            int nPolynomials = 1 << (qs.nFactorsA() - 1);
-            int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - trialDivError;
+            int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - trialDivError - qs.smallPrimeCorrection()
+                    - qs.largePrimeCorrection();
 
-            int relationsIncrement = qs.requiredRelations / 25;
-            int lastPrinted = 0;
+            // Each thread sieves with its own 'a' and polynomials, all adding to the relations of qs
+            ParallelSieve sieve;
+            if (nTrialThreads > 0) {
+                sieve = new SievePipeline(qs, nThreads, nTrialThreads);
+            } else {
+                sieve = new ParallelSieve(qs, nThreads);
+            }
+            if (nSegmentThreads > 0) sieve.setSegmentPool(new ForkJoinPool(nSegmentThreads));
 
             System.out.println("Finding relations...");
 
+            // If linear algebra gives no factor, every relation is kept and more are sieved before trying again
+            int extra = (QuadraticSieve.extraRelations > 0) ? QuadraticSieve.extraRelations
+                    : Math.max(1, qs.requiredRelations / 20);
+
             BigInteger factor;
             boolean foundFactor = false;
-            for (int j = 0; j < 1; j++) {
-                for (int i = 1; !qs.enoughRelations(); i++) {
-                    qs.sieve();
-                    qs.trialDivision(g, h, minTrial);
-                    Q_x = qs.nextPoly(i);
-                    g = Q_x[0];
-                    h = Q_x[1];
-
-                    if (i >= nPolynomials) {
-                        Q_x = qs.firstPoly();
-                        nPolynomials = 1 << (qs.nFactorsA() - 1);
-                        g = Q_x[0];
-                        h = Q_x[1];
-                        i = 0;
-                    }
-
-                    if ((qs.getRelationsFound() - lastPrinted > relationsIncrement) && loud) {
-                        System.out.printf("\r%d/%d", qs.getRelationsFound(), qs.requiredRelations);
-                        lastPrinted = qs.getRelationsFound();
-                    }
+            for (int j = 0; j < matrixAttempts; j++) {
+                if (j > 0) {
+                    qs.requireMoreRelations(extra);
+                    if (loud) System.out.printf("No factor found, sieving %d more relations...\n", extra);
                 }
+                sieve.findRelations(minTrial);
 
                 if (loud) {
-                    System.out.println("\nAttempting linear algebra stage...");
+                    if (qs.getDuplicateRelations() > 0) {
+                        System.out.println("\nDuplicate relations discarded: " + qs.getDuplicateRelations());
+                    }
+                    if (qs.partials != null) {
+                        System.out.printf("\nRelations combined from partial relations: %d (%d partial, %d cycles)\n",
+                                qs.partials.getCombined(), qs.partials.size(), qs.partials.getCycles());
+                        if (QuadraticSieve.doubleLargePrimes) {
+                            System.out.println("Cofactors split: " + qs.partials.getCofactorizer());
+                        }
+                    }
                 }
 
-                qs.constructMatrix();
-                factor = qs.solveMatrix();
+                // A dependency found while sieving may have already given a factor
+                factor = qs.getOnlineFactor();
+                if (factor != null) {
+                    if (loud) {
+                        System.out.printf("\nFactor found online from %d relations (%d dependencies tried)\n",
+                                qs.incremental.size(), qs.incremental.getDependencies());
+                    }
+                } else {
+                    if (loud) System.out.println("\nAttempting linear algebra stage...");
+                    qs.constructMatrix();
+                    factor = qs.solveMatrix();
+                }
 
                 // If no basis vectors produced non-trivial factor, we go back to sieving stage, otherwise print factor
                 if (factor != null) {
@@ -440,7 +758,6 @@ public class SIQS extends QuadraticSieve {
                     foundFactor = true;
                     break;
                 }
-                qs.clearRelations();
             }
 
             if (!foundFactor && loud) {
@@ -448,7 +765,7 @@ public class SIQS extends QuadraticSieve {
             }
 
         }
-        catch (FileNotFoundException e) {
+        catch (FileNotFoundException | InterruptedException e) {
             e.printStackTrace();
         }
     }
@@ -0,0 +1,45 @@
+package QS;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Task for sieving a single polynomial over a range of the sieve array. Ranges larger than
+ * {@code segmentSize} are split in half and forked, otherwise the range is sieved and trial
+ * divided on the current thread. Each segment computes its own starting index for every prime
+ * from the roots of the polynomial, so no segment depends on any other. If no polynomial is given,
+ * segments are only sieved and not trial divided.
+ */
+public class SegmentSieve extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // Largest range of the sieve array that is sieved by a single task
+    public static int segmentSize = 1 << 16;
+
+    private final QuadraticSieve qs;
+    private final QSPoly g, h;
+    private final int min_val;
+    private final int lo, hi;
+
+    public SegmentSieve(QuadraticSieve qs, QSPoly g, QSPoly h, int min_val, int lo, int hi) {
+        this.qs = qs;
+        this.g = g;
+        this.h = h;
+        this.min_val = min_val;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+        if (hi - lo <= segmentSize) {
+            qs.sieveRange(lo, hi);
+            if (g != null) qs.trialDivision(g, h, min_val, lo, hi);
+        } else {
+            // Split on a block boundary so that no block is sieved by two tasks
+            int mid = (lo + hi) >>> 1;
+            if (mid - (mid % QuadraticSieve.blockSize) > lo) mid -= mid % QuadraticSieve.blockSize;
+            invokeAll(new SegmentSieve(qs, g, h, min_val, lo, mid), new SegmentSieve(qs, g, h, min_val, mid, hi));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sieve and trial division stages of {@code SIQS} at the same time, on separately sized
+ * groups of threads. Each sieve thread sieves its own polynomials, and scans the sieve array of each
+ * one for candidates which are passed through a bounded {@code CandidateRing} to the trial division
+ * threads, which factor each candidate and add the smooth ones to the relations of the parent. If trial
+ * division falls behind, the ring fills and the sieve threads wait for it to catch up.
+ */
+public class SievePipeline extends ParallelSieve {
+
+    // Number of candidates the ring between the two stages holds
+    public static int ringCapacity = 1 << 14;
+
+    // Most polynomials that can have candidates in the ring at once, since each holds a copy of its roots
+    public static int maxPolynomials = 64;
+
+    // Most candidates a trial division thread takes from the ring at once
+    private static final int batchSize = 64;
+
+    /**
+     * Polynomial whose candidates are in the ring, with the roots that trial division of its candidates
+     * needs, and the number of those candidates that have not yet been trial divided. If resieving,
+     * also holds the sieve array index of each candidate and the resieved primes dividing it.
+     */
+    private record Polynomial(FixedInt[] g, QSPoly h, int[] soln1, int[] soln2, int[] a_factors,
+                              int[] candidates, int[][] hits, AtomicInteger remaining) {
+
+        int[] hits(int x, int m) {
+            return (hits == null) ? null : hits[Arrays.binarySearch(candidates, x + m)];
+        }
+    }
+
+    private final int nTrialThreads;
+    private final AtomicInteger nextId;
+
+    /*
+    Closing the ring is how either stage tells the other that sieving is over, so the ring, and the
+    polynomials with candidates in it, are made new for each call to findRelations
+     */
+    private CandidateRing ring;
+    private ConcurrentHashMap<Integer, Polynomial> polynomials;
+    private Semaphore polynomialSlots;
+
+    public SievePipeline(SIQS qs, int sieveThreads, int trialThreads) {
+        super(qs, sieveThreads);
+        if (trialThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + trialThreads);
+        }
+        nTrialThreads = trialThreads;
+        nextId = new AtomicInteger(0);
+    }
+
+    @Override
+    public void findRelations(int minTrial) throws InterruptedException {
+        ring = new CandidateRing(ringCapacity);
+        polynomials = new ConcurrentHashMap<>();
+        polynomialSlots = new Semaphore(maxPolynomials);
+        super.findRelations(minTrial);
+
+        // Candidates are only added to the batch by trial division threads, which have all stopped
+        if (parent.batch != null) parent.batch.flush();
+
+        if (QuadraticSieve.loud) {
+            System.out.printf("\nCandidates: %d sieved, %d trial divided, max queue depth %d/%d, " +
+                            "sieve waited %d times, trial division waited %d times",
+                    ring.getPuts(), ring.getTakes(), ring.getMaxSize(), ring.capacity(),
+                    ring.getFullWaits(), ring.getEmptyWaits());
+        }
+    }
+
+    @Override
+    protected ArrayList<Runnable> tasks(int minTrial) {
+        ArrayList<Runnable> tasks = new ArrayList<>(nThreads + nTrialThreads);
+        for (int i = 0; i < nThreads; i++) {
+            tasks.add(new SieveStage(newWorker(), minTrial));
+        }
+        for (int i = 0; i < nTrialThreads; i++) {
+            tasks.add(new TrialStage());
+        }
+        return tasks;
+    }
+
+    @Override
+    protected String progress() {
+        return String.format("%s (queue %d/%d)", super.progress(), ring.size(), ring.capacity());
+    }
+
+    /**
+     * Sieves polynomials of its own sieve, adding the candidates of each to the ring, until the ring is closed.
+     */
+    private class SieveStage implements Runnable {
+
+        private final SIQS qs;
+        private final int min_val;
+
+        SieveStage(SIQS qs, int min_val) {
+            this.qs = qs;
+            this.min_val = min_val;
+        }
+
+        @Override
+        public void run() {
+            qs.forEachPoly((g, h) -> {
+                if (segmentPool == null) {
+                    qs.sieve();
+                } else {
+                    qs.sieve(segmentPool);
+                }
+
+                int[] candidates = qs.candidates(min_val, 0, qs.sieve_array.length);
+                int n = candidates.length;
+                int[] x = new int[n];
+                int[] log = new int[n];
+                for (int i = 0; i < n; i++) {
+                    x[i] = candidates[i] - qs.m;
+                    log[i] = qs.sieve_array[candidates[i]] & 0xff;
+                }
+
+                if (n > 0) {
+                    int[][] hits = ((qs.batch == null) && (qs.resieve_index < qs.factor_base.length))
+                            ? qs.resieve(candidates, 0, qs.sieve_array.length) : null;
+
+                    try {
+                        // Wait for trial division to finish with an earlier polynomial, unless sieving is over
+                        while (!polynomialSlots.tryAcquire(pollInterval, TimeUnit.MILLISECONDS)) {
+                            if (ring.isClosed()) return;
+                        }
+
+                        int id = nextId.getAndIncrement();
+                        polynomials.put(id, new Polynomial(parent.divider.coefficients(g), h, qs.soln1.clone(),
+                                qs.soln2.clone(), qs.a_factor_indices, candidates, hits, new AtomicInteger(n)));
+
+                        // If the ring was closed before every candidate was added, sieving is over
+                        if (!ring.put(id, x, log, n)) return;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, ring::isClosed);
+        }
+    }
+
+    /**
+     * Trial divides candidates taken from the ring until there are enough relations.
+     */
+    private class TrialStage implements Runnable {
+
+        @Override
+        public void run() {
+            int[] ids = new int[batchSize];
+            int[] x = new int[batchSize];
+            int[] log = new int[batchSize];
+
+            int n, limit = parent.resieve_index;
+            Relation relation;
+            Polynomial poly;
+            TrialDivider.Workspace work = parent.divider.newWorkspace();
+            long maxCofactor = parent.maxCofactor();
+            try {
+                while (!parent.enoughRelations() && ((n = ring.take(ids, x, log)) > 0)) {
+                    for (int i = 0; i < n; i++) {
+                        poly = polynomials.get(ids[i]);
+                        if (parent.batch != null) {
+                            work.value.evaluate(poly.g(), x[i]);
+                            parent.batch.add(work.value.toBigInteger(), poly.h().apply(BigInteger.valueOf(x[i])));
+                        } else {
+                            relation = parent.divider.trialDivide(work, poly.g(), poly.h(), x[i], poly.soln1(),
+                                    poly.soln2(), poly.a_factors(), limit, poly.hits(x[i], parent.m), maxCofactor);
+                            if (relation != null) parent.addRelation(relation, work.getCofactor());
+                        }
+
+                        // Last candidate of this polynomial, so it is no longer needed
+                        if (poly.remaining().decrementAndGet() == 0) {
+                            polynomials.remove(ids[i]);
+                            polynomialSlots.release();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Wake up every thread waiting on the ring, since either there are enough relations or this failed
+                ring.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package QS;
+
+/**
+ * Sparse matrix over GF(2) stored by column, where column j is relation j and holds the index of every
+ * prime with an odd power in it. The indices of all columns are kept in one array, with column j being
+ * {@code rows[colStart[j]]} up to {@code rows[colStart[j + 1]]}, so a matrix of relations that each have
+ * a few dozen odd powers takes a few dozen ints per relation, no matter how large the factor base is.
+ *
+ * <p>The whole matrix is kept in heap, see {@link MappedMatrix} for a matrix kept in a file instead.</p>
+ */
+public final class SparseMatrix implements RelationMatrix {
+
+    private final int nRows;
+    private final int[] colStart;
+    private final int[] rows;
+
+    private SparseMatrix(int nRows, int[] colStart, int[] rows) {
+        this.nRows = nRows;
+        this.colStart = colStart;
+        this.rows = rows;
+    }
+
+    /**
+     * Creates the matrix whose column j is 1 exactly on the rows {@code indices[j]}.
+     * @param indices rows of each column that are 1
+     * @param nRows number of rows
+     * @return matrix with a column for each array of {@code indices}
+     */
+    public static SparseMatrix fromIndices(int[][] indices, int nRows) {
+        int[] colStart = new int[indices.length + 1];
+        for (int j = 0; j < indices.length; j++) colStart[j + 1] = colStart[j] + indices[j].length;
+
+        int[] rows = new int[colStart[indices.length]];
+        for (int j = 0; j < indices.length; j++) {
+            System.arraycopy(indices[j], 0, rows, colStart[j], indices[j].length);
+        }
+        return new SparseMatrix(nRows, colStart, rows);
+    }
+
+    @Override
+    public int nRows() {
+        return nRows;
+    }
+
+    @Override
+    public int nCols() {
+        return colStart.length - 1;
+    }
+
+    @Override
+    public long weight() {
+        return rows.length;
+    }
+
+    @Override
+    public void multiply(long[] x, long[] y, int lo, int hi) {
+        for (int j = lo; j < hi; j++) {
+            long xj = x[j];
+            if (xj == 0) continue;
+            for (int k = colStart[j]; k < colStart[j + 1]; k++) y[rows[k]] ^= xj;
+        }
+    }
+
+    @Override
+    public void multiplyTranspose(long[] y, long[] z, int lo, int hi) {
+        for (int j = lo; j < hi; j++) {
+            long sum = 0;
+            for (int k = colStart[j]; k < colStart[j + 1]; k++) sum ^= y[rows[k]];
+            z[j] = sum;
+        }
+    }
+}
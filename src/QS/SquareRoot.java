@@ -0,0 +1,139 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Square root stage, turning dependencies between relations into factors of N. For a dependency, the
+ * product of its g(x) is a perfect square y^2, and the product of its h(x) is x with {@code x^2 = y^2 mod N},
+ * so {@code gcd(x - y, N)} is a factor of N, non-trivial about half of the time.
+ *
+ * <p>Neither x nor y is ever computed in full: x is reduced mod N after each multiplication, and y is
+ * computed mod N from the sum of the exponent vectors of the dependency, halved. Relations only hold the
+ * primes dividing them, so summing them takes time proportional to the number of primes in each relation
+ * instead of the size of the factor base. Dependencies are tried on a pool of threads, stopping at the
+ * first that gives a non-trivial factor.</p>
+ *
+ * <p>A dependency is known by x, which is the same for the same relations no matter their order, so that
+ * when linear algebra is run again on more relations, dependencies that already gave a trivial factor
+ * are skipped instead of having their square root taken again.</p>
+ */
+public class SquareRoot {
+
+    private final QuadraticSieve qs;
+
+    private final Relation[] relations;
+
+    // Product of h(x) mod N of every dependency tried
+    private final Set<BigInteger> tried;
+
+    /**
+     * Creates a square root stage over the relations {@code relations}.
+     * @param qs sieve whose N and primes < F the relations are over
+     * @param relations relations dependencies are made of
+     */
+    public SquareRoot(QuadraticSieve qs, Relation[] relations) {
+        this(qs, relations, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Creates a square root stage over the relations {@code relations}, skipping every dependency in
+     * {@code tried} and adding every dependency it tries to it.
+     * @param qs sieve whose N and primes < F the relations are over
+     * @param relations relations dependencies are made of
+     * @param tried product of h(x) mod N of every dependency already tried, safe to add to from any thread
+     */
+    public SquareRoot(QuadraticSieve qs, Relation[] relations, Set<BigInteger> tried) {
+        this.qs = qs;
+        this.relations = relations;
+        this.tried = tried;
+    }
+
+    /**
+     * Tries each dependency until one gives a non-trivial factor of N.
+     * @param dependencies indices of the relations of each dependency
+     * @param nThreads number of dependencies to try at once
+     * @return non-trivial factor of N, or null if every dependency gave a trivial factor
+     */
+    public BigInteger factor(List<int[]> dependencies, int nThreads) {
+        if (nThreads <= 1 || dependencies.size() <= 1) {
+            BigInteger factor;
+            for (int[] rows : dependencies) {
+                if ((factor = tryDependency(rows)) != null) return factor;
+            }
+            return null;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        ExecutorCompletionService<BigInteger> completion = new ExecutorCompletionService<>(pool);
+        try {
+            for (int[] rows : dependencies) completion.submit(() -> tryDependency(rows));
+
+            BigInteger factor;
+            for (int i = 0; i < dependencies.size(); i++) {
+                if ((factor = completion.take().get()) != null) return factor;
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Square root failed", e.getCause());
+        } finally {
+            // Dependencies not yet started are never run once a factor is found
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Multiplies together the relations of a dependency, whose g(x) multiply to a perfect square,
+     * and checks if the square roots of each side give a non-trivial factor of N.
+     * @param rows indices of the relations in the dependency
+     * @return non-trivial factor of N, or null if the dependency gave a trivial factor or was already tried
+     */
+    public BigInteger tryDependency(int[] rows) {
+        BigInteger N = qs.N;
+        BigInteger x = BigInteger.ONE;
+        for (int i : rows) x = x.multiply(relations[i].t()).mod(N);
+        if (!tried.add(x)) return null;
+
+        int[] powers = new int[qs.primesLTF.length];
+        for (int i : rows) {
+            int[] primes = relations[i].primes();
+            int[] power = relations[i].powers();
+            for (int k = 0; k < primes.length; k++) powers[primes[k]] += power[k];
+        }
+
+        // Taking the 'square root' of the product of g(x)
+        BigInteger y = BigInteger.ONE;
+        for (int j = 0; j < powers.length; j++) {
+            int e = powers[j] >> 1;
+            if (e == 1) {
+                y = y.multiply(qs.primesLTF[j]).mod(N);
+            } else if (e > 1) {
+                y = y.multiply(qs.primesLTF[j].modPow(BigInteger.valueOf(e), N)).mod(N);
+            }
+        }
+
+        /*
+        The sign of g(x) is a column of the matrix, so the product of g(x) is positive and x^2 = y^2 mod N.
+        Unless x = +/- y, both x - y and x + y share a factor with N, but either may be the one found
+         */
+        BigInteger p = x.subtract(y).gcd(N);
+        BigInteger q = x.add(y).gcd(N);
+
+        // If non-trivial ({1, N} are trivial), return
+        if ((p.compareTo(N) < 0) && (p.compareTo(BigInteger.ONE) > 0)) {
+            return p;
+        } else if ((q.compareTo(N) < 0) && (q.compareTo(BigInteger.ONE) > 0)) {
+            return q;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,185 @@
+package QS;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Trial division of polynomial values g(x) by only the primes in the factor base that divide them.
+ *
+ * <p>A prime p in the factor base divides g(x) exactly when x is equivalent to one of the two roots of
+ * g mod p, which is checked using only int arithmetic. Only the primes passing this check are actually
+ * divided out of g(x), along with the primes dividing 'a', which divide every value of g(x) and so
+ * are divided out before anything else.</p>
+ */
+public class TrialDivider {
+
+    private final int[] factor_base;
+
+    // Index of each prime of the factor base in the array of all primes < F
+    private final int[] ltf_index;
+
+    /*
+    Number of limbs of each polynomial value, which is at most a few times N. While evaluating g(x) with Horner's
+    method the largest value is about a^2 * x^2, which is also a few times N since a is about sqrt(2N) / m.
+    The extra limb is plenty of room for any 'a' that is not close to ideal
+     */
+    private final int nLimbs;
+
+    public TrialDivider(QuadraticSieve qs) {
+        factor_base = qs.factor_base;
+        ltf_index = qs.ltf_index;
+        nLimbs = FixedInt.limbsFor(qs.N.bitLength() + 2) + 1;
+    }
+
+    /**
+     * Values reused for each candidate trial divided on a single thread, so that trial division does not
+     * allocate unless the candidate is smooth.
+     */
+    public final class Workspace {
+
+        // Value of polynomial being factored
+        public final FixedInt value;
+
+        // Indices in factor base of each prime divided out of value, repeated for each time it divides
+        private final int[] found;
+
+        // What was left of the value after the last trial division that returned a factorization
+        private long cofactor;
+
+        private Workspace() {
+            value = new FixedInt(nLimbs);
+
+            // Each prime divided out removes at least a bit
+            found = new int[nLimbs << 6];
+        }
+
+        /**
+         * Returns what was left of the last value trial divided in this workspace after dividing out the factor
+         * base, which is 1 if the value was smooth.
+         * @return cofactor of last value whose factorization was returned
+         */
+        public long getCofactor() {
+            return cofactor;
+        }
+    }
+
+    public Workspace newWorkspace() {
+        return new Workspace();
+    }
+
+    /**
+     * Returns the coefficients of {@code g} as fixed width integers, for evaluating g with
+     * {@link FixedInt#evaluate(FixedInt[], int)}.
+     * @param g polynomial
+     * @return coefficients of {@code g}, starting with the highest degree
+     */
+    public FixedInt[] coefficients(QSPoly g) {
+        FixedInt[] coeffs = new FixedInt[g.coeffs().length];
+        for (int i = 0; i < coeffs.length; i++) {
+            coeffs[i] = new FixedInt(g.coeffs()[i], nLimbs);
+        }
+        return coeffs;
+    }
+
+    /**
+     * Attempts to completely factor g(x) over the factor base using fixed width integers, only checking the roots
+     * of the primes before {@code limit}. The primes from {@code limit} on that divide g(x) must have already been
+     * found, by resieving, and are given in {@code hits}.
+     * @param work workspace of this thread
+     * @param g coefficients of polynomial, from {@link #coefficients(QSPoly)}
+     * @param h polynomial whose square is equivalent to g mod N
+     * @param x input to polynomial
+     * @param soln1 first root of polynomial mod each prime in factor base
+     * @param soln2 second root of polynomial mod each prime in factor base
+     * @param a_factors indices in factor base of the primes dividing 'a'
+     * @param limit index in factor base of first prime whose roots are not checked
+     * @param hits indices in factor base of primes from {@code limit} on dividing g(x), or null if none
+     * @return relation of g(x) and h(x) if g(x) was completely factored, or null if not
+     */
+    public Relation trialDivide(Workspace work, FixedInt[] g, QSPoly h, int x, int[] soln1, int[] soln2,
+                                int[] a_factors, int limit, int[] hits) {
+        return trialDivide(work, g, h, x, soln1, soln2, a_factors, limit, hits, 1);
+    }
+
+    /**
+     * Attempts to factor g(x) over the factor base, allowing a cofactor of at most {@code maxCofactor} to be
+     * left over, which is then available from {@link Workspace#getCofactor()}. Every prime in the factor base
+     * has been divided out of the cofactor, so a cofactor less than the square of the largest prime in the
+     * factor base is always prime.
+     * @param work workspace of this thread
+     * @param g coefficients of polynomial, from {@link #coefficients(QSPoly)}
+     * @param h polynomial whose square is equivalent to g mod N
+     * @param x input to polynomial
+     * @param soln1 first root of polynomial mod each prime in factor base
+     * @param soln2 second root of polynomial mod each prime in factor base
+     * @param a_factors indices in factor base of the primes dividing 'a'
+     * @param limit index in factor base of first prime whose roots are not checked
+     * @param hits indices in factor base of primes from {@code limit} on dividing g(x), or null if none
+     * @param maxCofactor largest cofactor allowed
+     * @return relation of g(x), without its cofactor, and h(x) if the cofactor was at most {@code maxCofactor},
+     * or null if not
+     */
+    public Relation trialDivide(Workspace work, FixedInt[] g, QSPoly h, int x, int[] soln1, int[] soln2,
+                                int[] a_factors, int limit, int[] hits, long maxCofactor) {
+        FixedInt u = work.value;
+        u.evaluate(g, x);
+        if (u.isZero()) return null;
+
+        int n = 0;
+        for (int q : a_factors) {
+            n = divideOut(work, q, n);
+        }
+
+        int p, r;
+        for (int i = 0; i < limit; i++) {
+            p = factor_base[i];
+            r = x % p;
+            if (r < 0) r += p;
+
+            // Roots of primes dividing 'a' are meaningless, but those primes have already been divided out
+            if ((r == soln1[i]) || (r == soln2[i])) {
+                n = divideOut(work, i, n);
+            }
+        }
+
+        if (hits != null) {
+            for (int i : hits) {
+                n = divideOut(work, i, n);
+            }
+        }
+
+        if (u.bitLength() >= Long.SIZE) return null;
+
+        long cofactor = u.longValue();
+        if (cofactor > maxCofactor) return null;
+        work.cofactor = cofactor;
+
+        /*
+        The primes dividing 'a' and the resieved primes were divided out out of order with the rest. Primes < F are
+        in the same order as the factor base, so sorting their indices puts every prime in order
+         */
+        int[] found = work.found;
+        for (int k = 0; k < n; k++) {
+            found[k] = ltf_index[found[k]];
+        }
+        Arrays.sort(found, 0, n);
+        return Relation.of(found, n, h.apply(BigInteger.valueOf(x)), u.signum() < 0);
+    }
+
+    /**
+     * Divides the prime {@code factor_base[i]} out of the value in {@code work} as many times as it divides,
+     * recording it in {@code work} once for each time.
+     * @param work workspace holding value being factored
+     * @param i index of prime in factor base
+     * @param n number of primes recorded so far
+     * @return number of primes recorded after dividing out this prime
+     */
+    private int divideOut(Workspace work, int i, int n) {
+        int p = factor_base[i];
+        while (work.value.mod(p) == 0) {
+            work.value.divide(p);
+            work.found[n++] = i;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,49 @@
+package QS;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Updater of as many roots at once as fit in the widest vector the CPU supports. Each lane adds or
+ * subtracts its delta and then adds or subtracts its prime only in the lanes that left [0, p).
+ *
+ * <p>Requires the {@code jdk.incubator.vector} module, which must be added with
+ * {@code --add-modules jdk.incubator.vector} when both compiling and running.</p>
+ */
+public final class VectorRootUpdater implements RootUpdater {
+
+    private static final VectorSpecies<Integer> species = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void update(int[] soln, int[] delta, int[] primes, int sign, int lo, int hi) {
+        int i = lo;
+        int upper = lo + species.loopBound(hi - lo);
+        IntVector r, p;
+        if (sign > 0) {
+            for (; i < upper; i += species.length()) {
+                p = IntVector.fromArray(species, primes, i);
+                r = IntVector.fromArray(species, soln, i).add(IntVector.fromArray(species, delta, i));
+                r.sub(p, r.compare(VectorOperators.GE, p)).intoArray(soln, i);
+            }
+        } else {
+            for (; i < upper; i += species.length()) {
+                p = IntVector.fromArray(species, primes, i);
+                r = IntVector.fromArray(species, soln, i).sub(IntVector.fromArray(species, delta, i));
+                r.add(p, r.compare(VectorOperators.LT, 0)).intoArray(soln, i);
+            }
+        }
+
+        // Tail of range smaller than a vector
+        int s;
+        for (; i < hi; i++) {
+            s = soln[i] + sign * delta[i];
+            if (s < 0) {
+                s += primes[i];
+            } else if (s >= primes[i]) {
+                s -= primes[i];
+            }
+            soln[i] = s;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package QS;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Scanner comparing as many indices of the sieve array against the threshold at once as fit in
+ * the widest vector the CPU supports. Most vectors have no candidates, so each one is skipped after
+ * a single compare, and only vectors with a candidate have the indices of their candidates extracted.
+ *
+ * <p>Requires the {@code jdk.incubator.vector} module, which must be added with
+ * {@code --add-modules jdk.incubator.vector} when both compiling and running.</p>
+ */
+public final class VectorScanner implements CandidateScanner {
+
+    // Mask of a vector is read as a long, so vectors can be at most 64 lanes
+    private static final VectorSpecies<Byte> species = (ByteVector.SPECIES_PREFERRED.length() <= Long.SIZE)
+            ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+
+    @Override
+    public int[] scan(byte[] array, int min_val, int lo, int hi) {
+        int[] candidates = new int[16];
+        int n = 0;
+
+        // Every value is at most 255, so with a threshold above that there are no candidates
+        if (min_val > 0xff) return new int[0];
+        byte threshold = (byte) Math.max(min_val, 0);
+
+        int j = lo;
+        int upper = lo + species.loopBound(hi - lo);
+        long bits;
+        VectorMask<Byte> mask;
+        for (; j < upper; j += species.length()) {
+            mask = ByteVector.fromArray(species, array, j).compare(VectorOperators.UNSIGNED_GE, threshold);
+            if (mask.anyTrue()) {
+                // Lane i of the vector is bit i, so the lowest set bit is always the next candidate
+                bits = mask.toLong();
+                while (bits != 0) {
+                    if (n == candidates.length) candidates = Arrays.copyOf(candidates, n << 1);
+                    candidates[n++] = j + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        // Tail of range smaller than a vector
+        for (; j < hi; j++) {
+            if ((array[j] & 0xff) >= min_val) {
+                if (n == candidates.length) candidates = Arrays.copyOf(candidates, n << 1);
+                candidates[n++] = j;
+            }
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+}
@@ -0,0 +1,93 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.math.BigInteger;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchSmoothnessTest {
+
+    @Test
+    void remainderTree() {
+        BigInteger[] leaves = new BigInteger[7];
+        for (int i = 0; i < leaves.length; i++) leaves[i] = BigInteger.valueOf(1000 + 37L * i);
+        BigInteger[][] tree = BatchSmoothness.productTree(leaves);
+
+        BigInteger product = BigInteger.ONE;
+        for (BigInteger u : leaves) product = product.multiply(u);
+        assertEquals(product, tree[tree.length - 1][0]);
+
+        BigInteger n = new BigInteger("123456789012345678901234567890123456789");
+        BigInteger[] rem = BatchSmoothness.remainderTree(n, tree);
+        for (int i = 0; i < leaves.length; i++) assertEquals(n.mod(leaves[i]), rem[i]);
+    }
+
+    @Test
+    void findRelations() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        QuadraticSieve.batchSize = 256;
+        SIQS qs;
+        try {
+            qs = new SIQS(N, primes);
+        } finally {
+            QuadraticSieve.batchSize = 0;
+        }
+
+        // Only a few candidates of each family are smooth, so keep sieving new families until some are found
+        int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError;
+        while (qs.getRelationsFound() < 10) {
+            QSPoly[] poly = qs.firstPoly();
+            for (int i = 1; i < 16; i++) {
+                qs.sieve();
+                qs.trialDivision(poly[0], poly[1], minTrial);
+                poly = qs.nextPoly(i);
+            }
+            qs.batch.flush();
+        }
+
+        // Every relation found in a batch should be exactly what trial division finds
+        for (Relation r : qs.relations.snapshot()) {
+            BigInteger u = r.t().multiply(r.t()).subtract(qs.N);
+            Relation expected = DenseRelation.of(qs.trialDivide(u), r.t(), u.signum() < 0);
+            assertArrayEquals(expected.primes(), r.primes());
+            assertArrayEquals(expected.powers(), r.powers());
+            assertEquals(expected.negative(), r.negative());
+        }
+    }
+
+    @Test
+    void flush() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        QuadraticSieve.batchSize = 1 << 20;
+        SIQS qs;
+        try {
+            qs = new SIQS(N, primes);
+        } finally {
+            QuadraticSieve.batchSize = 0;
+        }
+
+        // The batch is never filled, so relations are only found by testing what is in it when flushed
+        int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError;
+        while (qs.getRelationsFound() == 0) {
+            QSPoly[] poly = qs.firstPoly();
+            for (int i = 1; i < 16; i++) {
+                qs.sieve();
+                qs.trialDivision(poly[0], poly[1], minTrial);
+                poly = qs.nextPoly(i);
+            }
+            assertEquals(0, qs.getRelationsFound());
+            qs.batch.flush();
+        }
+    }
+}
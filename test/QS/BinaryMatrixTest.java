@@ -0,0 +1,85 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryMatrixTest {
+
+    /**
+     * Returns the matrix of each entry of {@code matrix} mod 2.
+     */
+    private static BinaryMatrix parity(int[][] matrix) {
+        BinaryMatrix m = new BinaryMatrix(matrix.length, matrix[0].length);
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                if ((matrix[i][j] & 1) != 0) m.set(i, j);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns true if the rows of {@code matrix} selected by row {@code k} of {@code kernel} sum to 0 mod 2.
+     */
+    private static boolean inKernel(BinaryMatrix kernel, int k, int[][] matrix) {
+        for (int j = 0; j < matrix[0].length; j++) {
+            int sum = 0;
+            for (int i = 0; i < matrix.length; i++) {
+                if (kernel.get(k, i)) sum += matrix[i][j];
+            }
+            if ((sum & 1) != 0) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void leftKernel() {
+        Random random = new Random(0);
+
+        // Sparse enough that some columns are empty, and wide enough that pivots span several words
+        int[][] sizes = new int[][]{{6, 4}, {70, 64}, {150, 130}, {300, 200}};
+        for (int[] size : sizes) {
+            int h = size[0], w = size[1];
+            int[][] matrix = new int[h][w];
+            for (int i = 0; i < h; i++) {
+                for (int j = 0; j < w; j++) {
+                    if (random.nextInt(10) == 0) matrix[i][j] = 1 + random.nextInt(3);
+                }
+            }
+
+            BinaryMatrix kernel = parity(matrix).leftKernel(1);
+            assertEquals(h, kernel.nCols());
+            assertTrue(kernel.nRows() >= h - w);
+
+            // Binary kernel of the transpose mod 2 has the same dimension
+            int[][] mod2 = new int[w][h];
+            for (int i = 0; i < h; i++) {
+                for (int j = 0; j < w; j++) mod2[j][i] = matrix[i][j] & 1;
+            }
+            assertEquals(Utils.binaryKernel(mod2).length, kernel.nRows(), h + " x " + w);
+
+            for (int k = 0; k < kernel.nRows(); k++) {
+                assertTrue(inKernel(kernel, k, matrix), "Kernel vector " + k + " of " + h + " x " + w);
+            }
+
+            assertEquals(kernel.nRows(), parity(matrix).leftKernel(4).nRows());
+        }
+    }
+
+    @Test
+    void xorRow() {
+        BinaryMatrix m = new BinaryMatrix(2, 100);
+        m.set(0, 3);
+        m.set(0, 99);
+        m.set(1, 99);
+        m.xorRow(1, 0);
+        assertTrue(m.get(1, 3) && !m.get(1, 99) && m.get(0, 99));
+        m.xorRow(1, 1);
+        for (int j = 0; j < m.nCols(); j++) assertFalse(m.get(1, j));
+    }
+}
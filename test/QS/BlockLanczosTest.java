@@ -0,0 +1,98 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockLanczosTest {
+
+    /**
+     * Returns a random matrix of relations, each with a few odd powers, the same way relations have a few
+     * odd powers among many primes.
+     */
+    private static int[][] relations(Random random, int n, int m) {
+        int[][] relations = new int[n][m];
+        for (int[] relation : relations) {
+            int weight = 3 + random.nextInt(15);
+            for (int k = 0; k < weight; k++) {
+                // Smaller primes divide more often
+                int i = (int) (m * Math.pow(random.nextDouble(), 2));
+                relation[i] += 1 + random.nextInt(2);
+            }
+        }
+        return relations;
+    }
+
+    /**
+     * Returns the matrix mod 2 whose columns are the exponent vectors {@code relations}.
+     */
+    private static SparseMatrix matrix(int[][] relations, int m) {
+        int[][] odd = new int[relations.length][];
+        for (int j = 0; j < relations.length; j++) {
+            int[] relation = relations[j];
+            odd[j] = IntStream.range(0, m).filter(i -> (relation[i] & 1) != 0).toArray();
+        }
+        return SparseMatrix.fromIndices(odd, m);
+    }
+
+    @Test
+    void multiply() {
+        Random random = new Random(0);
+        int[][] relations = relations(random, 300, 200);
+        SparseMatrix B = matrix(relations, 200);
+
+        long[] x = new long[300];
+        for (int i = 0; i < x.length; i++) x[i] = random.nextLong();
+
+        long[] y = new long[200];
+        B.multiply(x, y, 0, 150);
+        B.multiply(x, y, 150, 300);
+        for (int i = 0; i < 200; i++) {
+            long expected = 0;
+            for (int j = 0; j < 300; j++) {
+                if ((relations[j][i] & 1) != 0) expected ^= x[j];
+            }
+            assertEquals(expected, y[i]);
+        }
+
+        long[] z = new long[300];
+        B.multiplyTranspose(y, z, 0, 300);
+        for (int j = 0; j < 300; j++) {
+            long expected = 0;
+            for (int i = 0; i < 200; i++) {
+                if ((relations[j][i] & 1) != 0) expected ^= y[i];
+            }
+            assertEquals(expected, z[j]);
+        }
+    }
+
+    @Test
+    void solve() {
+        Random random = new Random(1);
+        int[][] sizes = new int[][]{{1100, 1000}, {3000, 2500}};
+        for (int[] size : sizes) {
+            int n = size[0], m = size[1];
+            int[][] relations = relations(random, n, m);
+            SparseMatrix B = matrix(relations, m);
+
+            for (int nThreads : new int[]{1, 3}) {
+                long[] deps = new BlockLanczos(B, nThreads, random).solve();
+                assertNotNull(deps, n + " x " + m);
+
+                // Every dependency found sums to 0 mod 2 on each prime
+                long[] sum = new long[m];
+                B.multiply(deps, sum, 0, n);
+                for (int i = 0; i < m; i++) assertEquals(0, sum[i], "Row " + i + " of " + n + " x " + m);
+
+                long any = 0;
+                for (long d : deps) any |= d;
+                assertTrue(Long.bitCount(any) >= 32, "Only " + Long.bitCount(any) + " dependencies");
+            }
+        }
+    }
+}
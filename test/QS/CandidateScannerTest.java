@@ -0,0 +1,28 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CandidateScannerTest {
+
+    @Test
+    void scan() {
+        Random random = new Random(0);
+        CandidateScanner scalar = new CandidateScanner.ScalarScanner();
+        CandidateScanner scanner = CandidateScanner.getInstance();
+
+        byte[] array = new byte[100003];
+        random.nextBytes(array);
+
+        // Every threshold, and ranges whose ends don't line up with vectors
+        for (int min_val = 0; min_val <= 256; min_val += 8) {
+            int lo = random.nextInt(100);
+            int hi = array.length - random.nextInt(100);
+            assertArrayEquals(scalar.scan(array, min_val, lo, hi), scanner.scan(array, min_val, lo, hi));
+        }
+        assertArrayEquals(scalar.scan(array, 100, 5, 9), scanner.scan(array, 100, 5, 9));
+    }
+}
@@ -0,0 +1,51 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CofactorizerTest {
+
+    @Test
+    void isProbablePrime() {
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long n = random.nextLong() >>> (1 + random.nextInt(62));
+            assertEquals(BigInteger.valueOf(n).isProbablePrime(50), Cofactorizer.isProbablePrime(n), "n = " + n);
+        }
+
+        // Strong pseudoprime to bases 2, 3, 5 and 7
+        assertTrue(!Cofactorizer.isProbablePrime(3215031751L));
+        assertTrue(Cofactorizer.isProbablePrime((1L << 61) - 1));
+    }
+
+    @Test
+    void split() {
+        Random random = new Random(1);
+        Cofactorizer cofactorizer = new Cofactorizer();
+        for (int bits = 20; bits <= 31; bits++) {
+            for (int i = 0; i < 50; i++) {
+                long p = BigInteger.probablePrime(bits, random).longValue();
+                long q = BigInteger.probablePrime(bits, random).longValue();
+                long n = p * q;
+
+                long d = cofactorizer.split(n);
+                assertTrue((d == p) || (d == q), n + " = " + p + " * " + q + ", found " + d);
+
+                // Each method on its own should split it too
+                d = Cofactorizer.brentRho(n);
+                assertTrue((d == p) || (d == q));
+                if (n <= Cofactorizer.lehmanBound) {
+                    d = Cofactorizer.lehman(n);
+                    assertTrue((d == p) || (d == q));
+                }
+            }
+        }
+        assertTrue(cofactorizer.getCalls(Cofactorizer.Method.SQUFOF) > 0);
+        assertTrue(cofactorizer.getCalls(Cofactorizer.Method.LEHMAN) > 0);
+    }
+}
@@ -0,0 +1,37 @@
+package QS;
+
+import java.math.BigInteger;
+
+/**
+ * Builds relations from the power of every prime < F, as tests find them by dividing by every prime.
+ */
+final class DenseRelation {
+
+    private DenseRelation() {
+    }
+
+    /**
+     * Creates a relation from the power of every prime < F in g(x).
+     * @param u powers of each prime < F in the factorization of g(x)
+     * @param t h(x), whose square is equivalent to g(x) mod N
+     * @param negative true if g(x) is negative
+     * @return relation holding only the primes dividing g(x)
+     */
+    static Relation of(int[] u, BigInteger t, boolean negative) {
+        int n = 0;
+        for (int e : u) {
+            if (e != 0) n++;
+        }
+
+        int[] primes = new int[n];
+        int[] powers = new int[n];
+        n = 0;
+        for (int j = 0; j < u.length; j++) {
+            if (u[j] != 0) {
+                primes[n] = j;
+                powers[n++] = u[j];
+            }
+        }
+        return new Relation(primes, powers, negative, t);
+    }
+}
@@ -0,0 +1,60 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FixedIntTest {
+
+    @Test
+    void evaluate() {
+        Random random = new Random(0);
+        int nLimbs = 4;
+        for (int trial = 0; trial < 1000; trial++) {
+            // Coefficients of each sign, with values that don't overflow 4 limbs
+            BigInteger[] coeffs = new BigInteger[3];
+            coeffs[0] = new BigInteger(120, random);
+            coeffs[1] = new BigInteger(150, random);
+            coeffs[2] = new BigInteger(180, random);
+            for (int i = 0; i < 3; i++) {
+                if (random.nextBoolean()) coeffs[i] = coeffs[i].negate();
+            }
+            QSPoly g = new QSPoly(coeffs);
+
+            FixedInt[] fixed = new FixedInt[3];
+            for (int i = 0; i < 3; i++) fixed[i] = new FixedInt(coeffs[i], nLimbs);
+
+            int x = random.nextInt() >> random.nextInt(32);
+            FixedInt u = new FixedInt(nLimbs);
+            u.evaluate(fixed, x);
+            assertEquals(g.apply(BigInteger.valueOf(x)), u.toBigInteger());
+        }
+    }
+
+    @Test
+    void divide() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 1000; trial++) {
+            BigInteger n = new BigInteger(250, random);
+            int p = 1 + random.nextInt(Integer.MAX_VALUE);
+            BigInteger P = BigInteger.valueOf(p);
+
+            FixedInt u = new FixedInt(n.negate(), 4);
+            assertEquals(n.mod(P).intValue(), u.mod(p));
+            assertEquals(n.mod(P).intValue(), u.divide(p));
+            assertEquals(n.divide(P).negate(), u.toBigInteger());
+        }
+
+        FixedInt u = new FixedInt(BigInteger.valueOf(3).pow(100).multiply(BigInteger.valueOf(7)), 3);
+        int e = 0;
+        while (u.mod(3) == 0) {
+            assertEquals(0, u.divide(3));
+            e++;
+        }
+        assertEquals(100, e);
+        assertEquals(BigInteger.valueOf(7), u.toBigInteger());
+    }
+}
@@ -0,0 +1,79 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.math.BigInteger;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalSolverTest {
+
+    @Test
+    void online() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        QuadraticSieve.onlineSolver = true;
+        SIQS qs;
+        try {
+            qs = new SIQS(N, primes);
+        } finally {
+            QuadraticSieve.onlineSolver = false;
+        }
+
+        // Sieving stops as soon as a dependency gives a factor, before the relations first required are found
+        qs.findRelations(Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError);
+        BigInteger factor = qs.getOnlineFactor();
+        assertNotNull(factor);
+        assertTrue(factor.compareTo(BigInteger.ONE) > 0 && factor.compareTo(N) < 0);
+        assertEquals(BigInteger.ZERO, N.mod(factor));
+        assertTrue(qs.incremental.getDependencies() > 0);
+
+        // Once a factor is found, relations are ignored, including the rest found on the same polynomial
+        int reduced = qs.incremental.size();
+        assertTrue(reduced <= qs.getRelationsFound());
+        Relation first = qs.relations.snapshot().get(0);
+        assertFalse(qs.incremental.add(first));
+        assertEquals(reduced, qs.incremental.size());
+
+        qs.clearRelations();
+        assertNull(qs.getOnlineFactor());
+        assertEquals(0, qs.incremental.size());
+    }
+
+    @Test
+    void dependencies() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        SIQS qs = new SIQS(N, primes);
+
+        // Relations whose parity vectors are already reduced against each other are never dependent, and the
+        // same relation twice always is
+        int n = qs.primesLTF.length;
+        IncrementalSolver solver = new IncrementalSolver(qs);
+        for (int j = 0; j < n; j++) {
+            int[] u = new int[n];
+            u[j] = 1;
+            if (j + 1 < n) u[j + 1] = 3;
+            u[0] += 2;
+            solver.add(DenseRelation.of(u, BigInteger.valueOf(j + 2), false));
+        }
+        assertEquals(0, solver.getDependencies());
+
+        int[] u = new int[n];
+        u[n - 1] = 1;
+        solver.add(DenseRelation.of(u, BigInteger.valueOf(n + 2), false));
+        assertEquals(1, solver.getDependencies());
+        assertEquals(n + 1, solver.size());
+    }
+}
@@ -0,0 +1,56 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class MappedMatrixTest {
+
+    @Test
+    void multiply() throws IOException {
+        Random random = new Random(0);
+        int n = 2000, m = 1800;
+        int[][] indices = new int[n][];
+        for (int j = 0; j < n; j++) {
+            indices[j] = random.ints(3 + random.nextInt(15), 0, m).distinct().sorted().toArray();
+        }
+
+        Path file = Files.createTempFile("matrix", ".bin");
+        try {
+            SparseMatrix sparse = SparseMatrix.fromIndices(indices, m);
+            MappedMatrix mapped = MappedMatrix.write(file, indices, m);
+            assertEquals(sparse.nRows(), mapped.nRows());
+            assertEquals(sparse.nCols(), mapped.nCols());
+            assertEquals(sparse.weight(), mapped.weight());
+
+            long[] x = random.longs(n).toArray();
+            long[] y1 = new long[m], y2 = new long[m];
+            sparse.multiply(x, y1, 0, n);
+            mapped.multiply(x, y2, 0, 700);
+            mapped.multiply(x, y2, 700, n);
+            assertArrayEquals(y1, y2);
+
+            long[] z1 = new long[n], z2 = new long[n];
+            sparse.multiplyTranspose(y1, z1, 0, n);
+            mapped.multiplyTranspose(y1, z2, 0, 1300);
+            mapped.multiplyTranspose(y1, z2, 1300, n);
+            assertArrayEquals(z1, z2);
+
+            // Dependencies found on the mapped matrix sum to 0
+            long[] deps = new BlockLanczos(mapped, 2, random).solve();
+            assertNotNull(deps);
+            long[] sum = new long[m];
+            sparse.multiply(deps, sum, 0, n);
+            assertArrayEquals(new long[m], sum);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.math.BigInteger;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PartialRelationsTest {
+
+    @Test
+    void combine() throws FileNotFoundException {
+        check(false);
+    }
+
+    @Test
+    void cycles() throws FileNotFoundException {
+        check(true);
+    }
+
+    /**
+     * Sieves until some relations have been combined from partial relations, checking that every relation found
+     * is valid.
+     */
+    private void check(boolean twoPrimes) throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        QuadraticSieve.largePrimeMultiplier = 50;
+        QuadraticSieve.doubleLargePrimes = twoPrimes;
+        SIQS qs;
+        try {
+            qs = new SIQS(N, primes);
+        } finally {
+            QuadraticSieve.largePrimeMultiplier = 0;
+            QuadraticSieve.doubleLargePrimes = false;
+        }
+
+        int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError;
+        while (qs.partials.getCombined() < 10) {
+            QSPoly[] poly = qs.firstPoly();
+            for (int i = 1; i < 16; i++) {
+                qs.sieve();
+                qs.trialDivision(poly[0], poly[1], minTrial);
+                poly = qs.nextPoly(i);
+            }
+        }
+
+        // Every relation, combined or not, should have t^2 = product of its primes mod N, including its sign
+        BigInteger square, product;
+        for (Relation r : qs.relations.snapshot()) {
+            square = r.t().multiply(r.t()).mod(N);
+            product = qs.evalPower(r).mod(N);
+            assertEquals(square, product);
+        }
+    }
+}
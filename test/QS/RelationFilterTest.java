@@ -0,0 +1,102 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RelationFilterTest {
+
+    private static int[][] relations(Random random, int n, int m) {
+        int[][] relations = new int[n][m];
+        for (int[] relation : relations) {
+            int weight = 3 + random.nextInt(10);
+            for (int k = 0; k < weight; k++) {
+                relation[(int) (m * Math.pow(random.nextDouble(), 2))] += 1 + random.nextInt(2);
+            }
+        }
+        return relations;
+    }
+
+    /**
+     * Returns the primes with an odd power in each relation, as the filter takes them.
+     */
+    private static int[][] odd(int[][] relations) {
+        int[][] odd = new int[relations.length][];
+        for (int i = 0; i < relations.length; i++) {
+            int[] relation = relations[i];
+            odd[i] = IntStream.range(0, relation.length).filter(j -> (relation[j] & 1) != 0).toArray();
+        }
+        return odd;
+    }
+
+    /**
+     * Checks that every dependency of the filtered matrix is a dependency of the original relations.
+     */
+    private static void checkDependencies(RelationFilter filter, int[][] relations) {
+        int[][] sets = filter.getSets();
+        int[][] columns = filter.getColumns();
+        BinaryMatrix kernel = BinaryMatrix.fromIndices(columns, filter.nPrimes()).leftKernel(1);
+        assertTrue(kernel.nRows() > 0);
+
+        for (int k = 0; k < kernel.nRows(); k++) {
+            int[] sum = new int[relations[0].length];
+            for (int i = 0; i < sets.length; i++) {
+                if (!kernel.get(k, i)) continue;
+                for (int r : sets[i]) {
+                    for (int j = 0; j < sum.length; j++) sum[j] += relations[r][j];
+                }
+            }
+            for (int s : sum) assertEquals(0, s & 1);
+        }
+    }
+
+    @Test
+    void removeSingletons() {
+        Random random = new Random(0);
+        int[][] relations = relations(random, 400, 600);
+        BigInteger[] t = new BigInteger[relations.length];
+        for (int i = 0; i < t.length; i++) t[i] = BigInteger.valueOf(i);
+
+        // Same h(x) up to sign as the first relation
+        t[1] = t[0].negate();
+
+        RelationFilter filter = new RelationFilter(odd(relations), 600);
+        filter.removeDuplicates(t);
+        assertEquals(relations.length - 1, filter.nRelations());
+        filter.removeSingletons();
+
+        int[] count = new int[filter.nPrimes()];
+        for (int[] row : filter.getColumns()) {
+            for (int j : row) count[j]++;
+        }
+        for (int c : count) assertTrue(c >= 2);
+        assertTrue(filter.nPrimes() < 600);
+
+        checkDependencies(filter, relations);
+    }
+
+    @Test
+    void merge() {
+        Random random = new Random(1);
+        int[][] relations = relations(random, 700, 600);
+        RelationFilter filter = new RelationFilter(odd(relations), 600);
+        filter.removeSingletons();
+        int before = filter.nRelations();
+
+        filter.removeCliques(50);
+        assertTrue(filter.excess() >= 50);
+        assertTrue(filter.nRelations() < before);
+
+        int excess = filter.excess();
+        filter.merge(100);
+        assertTrue(filter.excess() >= excess);
+        for (int[] row : filter.getColumns()) assertTrue(row.length <= 100);
+
+        checkDependencies(filter, relations);
+    }
+}
@@ -0,0 +1,45 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RelationStoreTest {
+
+    @Test
+    void concurrentAdd() throws InterruptedException {
+        RelationStore store = new RelationStore(4);
+        int nThreads = 8;
+        int perThread = 10000;
+
+        // Every thread adds the same h(x) values, with half of them negated, so only one of each is kept
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            int sign = (i % 2 == 0) ? 1 : -1;
+            Thread thread = new Thread(() -> {
+                for (int j = 1; j <= perThread; j++) {
+                    store.add(new Relation(new int[]{j}, new int[]{1}, false, BigInteger.valueOf((long) sign * j)));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        // Snapshot while threads are still adding should never see more than was counted after
+        int seenDuring = store.snapshot().size();
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(seenDuring <= store.size());
+        assertEquals(perThread, store.size());
+        assertEquals(perThread, store.snapshot().size());
+        assertEquals((nThreads - 1) * perThread, store.duplicates());
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.snapshot().size());
+    }
+}
@@ -0,0 +1,50 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RelationTest {
+
+    @Test
+    void of() {
+        // Primes repeated for each time they divide give their powers, and only the first n are used
+        Relation r = Relation.of(new int[]{1, 1, 1, 4, 4, 5, 9}, 6, BigInteger.TEN, true);
+        assertArrayEquals(new int[]{1, 4, 5}, r.primes());
+        assertArrayEquals(new int[]{3, 2, 1}, r.powers());
+        assertArrayEquals(new int[]{1, 5, 7}, r.columns(7));
+
+        r = Relation.of(new int[]{0, 0, 2}, 3, BigInteger.TEN, false);
+        assertArrayEquals(new int[]{2}, r.columns(3));
+
+        r = Relation.of(new int[0], 0, BigInteger.ONE, false);
+        assertEquals(0, r.primes().length);
+    }
+
+    @Test
+    void multiply() {
+        Random random = new Random(0);
+        int n = 200;
+        for (int trial = 0; trial < 100; trial++) {
+            int[] u = new int[n], v = new int[n], sum = new int[n];
+            for (int j = 0; j < n; j++) {
+                if (random.nextInt(8) == 0) u[j] = 1 + random.nextInt(3);
+                if (random.nextInt(8) == 0) v[j] = 1 + random.nextInt(3);
+                sum[j] = u[j] + v[j];
+            }
+            boolean a = random.nextBoolean(), b = random.nextBoolean();
+
+            Relation product = DenseRelation.of(u, BigInteger.ONE, a).multiply(DenseRelation.of(v, BigInteger.ONE, b),
+                    BigInteger.TWO);
+            Relation expected = DenseRelation.of(sum, BigInteger.TWO, a != b);
+            assertArrayEquals(expected.primes(), product.primes());
+            assertArrayEquals(expected.powers(), product.powers());
+            assertEquals(expected.negative(), product.negative());
+            assertEquals(BigInteger.TWO, product.t());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class RootUpdaterTest {
+
+    @Test
+    void update() {
+        Random random = new Random(0);
+        RootUpdater updater = RootUpdater.getInstance();
+
+        int n = 1003;
+        int[] primes = new int[n];
+        int[] soln = new int[n];
+        int[] delta = new int[n];
+        for (int i = 0; i < n; i++) {
+            primes[i] = 2 + random.nextInt(1 << 20);
+            soln[i] = random.nextInt(primes[i]);
+            delta[i] = random.nextInt(primes[i]);
+        }
+
+        for (int sign : new int[]{1, -1}) {
+            int[] expected = soln.clone();
+            for (int i = 3; i < n - 2; i++) expected[i] = Math.floorMod(soln[i] + sign * delta[i], primes[i]);
+
+            int[] actual = soln.clone();
+            updater.update(actual, delta, primes, sign, 3, n - 2);
+            assertArrayEquals(expected, actual);
+        }
+    }
+}
@@ -7,8 +7,29 @@ import java.io.FileNotFoundException;
 import java.math.BigInteger;
 import java.util.Scanner;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 class SIQSTest {
 
+    /**
+     * Asserts that {@code actual} is the relation of g(x) = {@code u} and h(x) = {@code t}, given the powers of
+     * each prime < F in {@code u} from dividing by every prime, or null if {@code u} is not smooth.
+     */
+    private static void assertRelation(int[] expected, BigInteger u, BigInteger t, Relation actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        Relation r = DenseRelation.of(expected, t, u.signum() < 0);
+        assertArrayEquals(r.primes(), actual.primes());
+        assertArrayEquals(r.powers(), actual.powers());
+        assertEquals(r.negative(), actual.negative());
+        assertEquals(t, actual.t());
+    }
+
     @Test
     void choosePoly() {
         BigInteger a = new BigInteger("4461769171101033943441783314719");
@@ -59,6 +80,79 @@ class SIQSTest {
         }
     }
 
+    @Test
+    void trialDivider() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        SIQS qs = new SIQS(N, primes);
+        QSPoly[] poly = qs.firstPoly();
+
+        int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError;
+        int checked = 0;
+        BigInteger u;
+        TrialDivider.Workspace work = qs.divider.newWorkspace();
+        for (int i = 1; i < 16; i++) {
+            qs.sieve();
+            FixedInt[] coeffs = qs.divider.coefficients(poly[0]);
+            for (int j = 0; j < qs.sieve_array.length; j++) {
+                if ((qs.sieve_array[j] & 0xff) >= minTrial) {
+                    u = poly[0].apply(BigInteger.valueOf(j - qs.m));
+
+                    // Dividing by only the primes whose roots match should give the same as dividing by every prime
+                    Relation actual = qs.divider.trialDivide(work, coeffs, poly[1], j - qs.m, qs.soln1, qs.soln2,
+                            qs.a_factor_indices, qs.factor_base.length, null);
+                    assertRelation(qs.trialDivide(u), u, poly[1].apply(BigInteger.valueOf(j - qs.m)), actual);
+                    checked++;
+                }
+            }
+            poly = qs.nextPoly(i);
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    void resieve() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+
+        // Resieve about half of the medium primes and all the large primes
+        QuadraticSieve.resieveBound = 2000;
+        SIQS qs;
+        try {
+            qs = new SIQS(N, primes);
+        } finally {
+            QuadraticSieve.resieveBound = Integer.MAX_VALUE;
+        }
+        QSPoly[] poly = qs.firstPoly();
+
+        int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError;
+        int checked = 0;
+        BigInteger u;
+        TrialDivider.Workspace work = qs.divider.newWorkspace();
+        for (int i = 1; i < 16; i++) {
+            qs.sieve();
+            FixedInt[] coeffs = qs.divider.coefficients(poly[0]);
+            int[] candidates = qs.candidates(minTrial, 0, qs.sieve_array.length);
+            int[][] hits = qs.resieve(candidates, 0, qs.sieve_array.length);
+            for (int k = 0; k < candidates.length; k++) {
+                int x = candidates[k] - qs.m;
+                u = poly[0].apply(BigInteger.valueOf(x));
+
+                // Resieved primes should be exactly those whose roots match
+                Relation actual = qs.divider.trialDivide(work, coeffs, poly[1], x, qs.soln1, qs.soln2,
+                        qs.a_factor_indices, qs.resieve_index, hits[k]);
+                assertRelation(qs.trialDivide(u), u, poly[1].apply(BigInteger.valueOf(x)), actual);
+                checked++;
+            }
+            poly = qs.nextPoly(i);
+        }
+        assertTrue(checked > 0);
+    }
+
     @Test
     void main_52() {
         BigInteger a = new BigInteger("4461769171101033943441783314719");
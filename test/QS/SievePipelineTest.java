@@ -0,0 +1,35 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SievePipelineTest {
+
+    @Test
+    void retry() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        SIQS qs = new SIQS(N, primes);
+        SievePipeline sieve = new SievePipeline(qs, 1, 1);
+        int minTrial = Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError;
+
+        // Sieving again after more relations are required, as when every dependency fails, finds them
+        assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            for (int round = 0; round < 3; round++) {
+                if (round > 0) qs.requireMoreRelations(20);
+                sieve.findRelations(minTrial);
+                assertTrue(qs.getRelationsFound() >= qs.requiredRelations);
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package QS;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SquareRootTest {
+
+    @Test
+    void factor() throws FileNotFoundException {
+        BigInteger N = new BigInteger("1641616037791817208763207797967619321");
+
+        QuadraticSieve.loud = false;
+        BigInteger[] primes = QuadraticSieve.startup(N, new Scanner(new File("./primes.txt")));
+        SIQS qs = new SIQS(N, primes);
+        qs.findRelations(Utils.BigSqrt(qs.N).multiply(qs.M).bitLength() - SIQS.trialDivError);
+        qs.constructMatrix();
+
+        BinaryMatrix kernel = BinaryMatrix.fromIndices(qs.smooth_matrix, qs.matrixColumns()).leftKernel(1);
+        ArrayList<int[]> dependencies = new ArrayList<>();
+        for (int k = 0; k < kernel.nRows(); k++) {
+            ArrayList<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < kernel.nCols(); i++) {
+                if (kernel.get(k, i)) rows.add(i);
+            }
+            dependencies.add(rows.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        SquareRoot root = new SquareRoot(qs, qs.smooth_relations);
+
+        // About half of the dependencies give a non-trivial factor
+        int found = 0;
+        for (int[] rows : dependencies) {
+            BigInteger factor = root.tryDependency(rows);
+            if (factor != null) {
+                assertEquals(BigInteger.ZERO, N.mod(factor));
+                found++;
+            }
+        }
+        assertTrue(found > 0, "No factor from " + dependencies.size() + " dependencies");
+
+        // Every dependency has now been tried, so they are all skipped
+        for (int[] rows : dependencies) assertNull(root.tryDependency(rows));
+
+        for (int nThreads : new int[]{1, 3}) {
+            root = new SquareRoot(qs, qs.smooth_relations);
+            BigInteger factor = root.factor(dependencies, nThreads);
+            assertNotNull(factor);
+            assertTrue(factor.compareTo(BigInteger.ONE) > 0 && factor.compareTo(N) < 0);
+            assertEquals(BigInteger.ZERO, N.mod(factor));
+        }
+    }
+}